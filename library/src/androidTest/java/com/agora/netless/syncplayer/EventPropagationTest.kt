@@ -0,0 +1,90 @@
+package com.agora.netless.syncplayer
+
+import android.os.Debug
+import android.os.Handler
+import android.os.Looper
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.util.concurrent.CountDownLatch
+
+@RunWith(AndroidJUnit4::class)
+class EventPropagationTest {
+    private val ticks = 1000
+
+    /**
+     * 与 [ticks] 无关的上限，容许计数开关本身的少量分配
+     */
+    private val maxAllocations = 8
+
+    /**
+     * FakePlayer -> SelectionPlayer -> OffsetPlayer -> SyncGroup
+     *
+     * 定位至空白之后，叶子播放器的进度才会经由 OffsetPlayer 向上传递
+     */
+    private fun deepTree(leaf: FakePlayer): SyncGroup {
+        val selectionPlayer = SelectionPlayer(leaf, SelectionOptions(listOf(Selection(0, 60_000))))
+        val offsetPlayer = OffsetPlayer(selectionPlayer, 1_000)
+        return SyncGroup(offsetPlayer, FakePlayer(60_000)).apply {
+            prepare()
+            seekTo(2_000)
+        }
+    }
+
+    @Test
+    fun position_tick_reaches_user_listener_in_one_hop() {
+        val countDownLatch = CountDownLatch(1)
+        val events = ArrayList<String>()
+
+        InstrumentationRegistry.getInstrumentation().runOnMainSync {
+            val leaf = FakePlayer(60_000)
+            val root = deepTree(leaf)
+            root.addPlayerListener(object : AtomPlayerListener {
+                override fun onPositionChanged(atomPlayer: AtomPlayer, position: Long) {
+                    events.add("position $position")
+                }
+            })
+
+            leaf.dispatchPositionChanged(5_000)
+            Handler(Looper.getMainLooper()).post {
+                events.add("next loop")
+                countDownLatch.countDown()
+            }
+        }
+        countDownLatch.await()
+
+        assertEquals(listOf("position 6000", "next loop"), events)
+    }
+
+    @Suppress("DEPRECATION")
+    @Test
+    fun position_tick_inside_tree_does_not_allocate() {
+        var allocations = 0
+
+        InstrumentationRegistry.getInstrumentation().runOnMainSync {
+            val leaf = FakePlayer(60_000)
+            deepTree(leaf)
+
+            // warm up
+            for (i in 1..ticks) {
+                leaf.dispatchPositionChanged(1_000L + i)
+            }
+
+            Debug.resetThreadAllocCount()
+            Debug.startAllocCounting()
+            for (i in 1..ticks) {
+                leaf.dispatchPositionChanged(1_000L + ticks + i)
+            }
+            Debug.stopAllocCounting()
+            allocations = Debug.getThreadAllocCount()
+        }
+
+        assertTrue(
+            "allocations $allocations for $ticks ticks",
+            allocations <= maxAllocations
+        )
+    }
+}
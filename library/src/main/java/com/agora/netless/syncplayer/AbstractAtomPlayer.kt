@@ -4,7 +4,6 @@ import android.os.Handler
 import android.os.Looper
 import android.os.Message
 import android.view.ViewGroup
-import java.util.concurrent.CopyOnWriteArraySet
 
 abstract class AbstractAtomPlayer : AtomPlayer {
     override var name: String = this.javaClass.simpleName
@@ -30,7 +29,370 @@ abstract class AbstractAtomPlayer : AtomPlayer {
 
     override var playbackSpeed = 1.0f
 
+    /**
+     * 播放器树共享的时钟，设置后同步给所有内部播放器
+     */
+    var clock: PlayerClock = PlayerClock.SYSTEM
+        set(value) {
+            field = value
+            innerPlayers.forEach {
+                (it as? AbstractAtomPlayer)?.clock = value
+            }
+        }
+
+    private var scrubMode = false
+
+    // 拖动期间最后一次 seek 的目标，结束拖动时精确 seek 至此
+    private var scrubTarget = -1L
+
+    /**
+     * 拖动进度条期间设为 true，seek 只定位到最近的关键帧，同步给所有内部播放器
+     * 恢复为 false 时，对拖动期间最后一次 seek 的目标精确 seek 一次
+     */
+    var scrubbing: Boolean
+        get() = scrubMode
+        set(value) {
+            if (scrubMode == value) {
+                return
+            }
+            val target = scrubTarget
+            updateScrubbing(value)
+            if (!value && target != -1L) {
+                seekTo(target)
+            }
+        }
+
+    private fun updateScrubbing(scrubbing: Boolean) {
+        scrubMode = scrubbing
+        scrubTarget = -1
+        innerPlayers.forEach {
+            (it as? AbstractAtomPlayer)?.updateScrubbing(scrubbing)
+        }
+        onScrubbingChanged(scrubbing)
+    }
+
+    internal open fun onScrubbingChanged(scrubbing: Boolean) {}
+
+    // 已发起但尚未回调 onSeekTo 的 seek
+    private var seekPending = false
+
+    private val seekHandles = ArrayList<SeekHandle>(1)
+
+    /**
+     * 组合播放器的上层播放器，为空时即为播放器树的根
+     */
+    internal var parentPlayer: AbstractAtomPlayer? = null
+
+    private var positionTicking = false
+
+    private var frameTicker: FrameTicker? = null
+
+    /**
+     * 位置回调频率，取值 1 ~ 60 Hz，在根播放器上设置
+     */
+    var positionUpdateRate: Int = FrameTicker.DEFAULT_RATE
+        set(value) {
+            field = value.coerceIn(FrameTicker.MIN_RATE, FrameTicker.MAX_RATE)
+            frameTicker?.rate = field
+        }
+
+    /**
+     * 整棵播放器树的缓冲内存上限，按各叶子播放器 [BufferProfile.weight] 分配，在根播放器上设置
+     */
+    var bufferMemoryBudget: Long = DEFAULT_BUFFER_MEMORY_BUDGET
+        set(value) {
+            field = value
+            root().rebalanceBuffers()
+        }
+
+    /**
+     * 叶子播放器的缓冲控制，参与根播放器的内存分配
+     */
+    internal open val loadControl: BufferLoadControl?
+        get() = null
+
+    /**
+     * 当前位置之后已缓冲的时长，单位毫秒，不适用时为 -1
+     *
+     * 组合播放器取内部播放器中的最小值
+     */
+    internal open fun bufferedAheadMs(): Long {
+        var buffered = -1L
+        val players = innerPlayers
+        for (i in players.indices) {
+            val value = (players[i] as? AbstractAtomPlayer)?.bufferedAheadMs() ?: -1
+            if (value >= 0 && (buffered < 0 || value < buffered)) {
+                buffered = value
+            }
+        }
+        return buffered
+    }
+
+    /**
+     * 根播放器的带宽调度，设置后在加载时优先保证即将卡顿的叶子播放器
+     */
+    var bandwidthScheduler: BandwidthScheduler? = null
+        set(value) {
+            field?.detach()
+            field = value
+            value?.attach(this)
+        }
+
+    /**
+     * 根播放器的码率分配，设置后按共享带宽估计为各叶子播放器分配码率上限
+     */
+    var bitratePolicy: BitratePolicy? = null
+        set(value) {
+            field?.detach()
+            field = value
+            value?.attach(this)
+        }
+
+    /**
+     * 叶子播放器视图的可见面积，单位像素，不可见时为 0
+     */
+    internal open fun visibleArea(): Long = 0
+
+    internal open fun setMaxVideoBitrate(bitrate: Int) {}
+
+    /**
+     * 根播放器的解码器分配，设置后只有可见的叶子播放器保留视频解码
+     */
+    var decoderBudget: DecoderBudget? = null
+        set(value) {
+            field?.detach()
+            field = value
+            value?.attach(this)
+        }
+
+    /**
+     * 叶子播放器开启或关闭视频解码
+     */
+    internal open fun setVideoEnabled(enabled: Boolean) {}
+
+    /**
+     * 是否即将可见，由上层 [OffsetPlayer] 在空白结束前决定
+     */
+    internal open fun isPrerolling(): Boolean = parentPlayer?.isPrerolling() == true
+
+    /**
+     * 播放器树结构或缓冲配置变化时，重新分配各叶子播放器的缓冲内存
+     */
+    internal fun rebalanceBuffers() {
+        val leaves = ArrayList<AbstractAtomPlayer>()
+        collectBufferingLeaves(leaves)
+        if (leaves.isEmpty()) {
+            return
+        }
+        val totalWeight = leaves.sumOf { it.loadControl!!.profile.weight }
+        leaves.forEach {
+            val control = it.loadControl!!
+            control.allowedBytes = (bufferMemoryBudget * control.profile.weight / totalWeight)
+                .coerceAtLeast(BufferLoadControl.MIN_ALLOWED_BYTES)
+        }
+    }
+
+    /**
+     * 收集带有缓冲控制的叶子播放器
+     */
+    internal fun collectBufferingLeaves(leaves: MutableList<AbstractAtomPlayer>) {
+        if (loadControl != null) {
+            leaves += this
+        }
+        innerPlayers.forEach {
+            (it as? AbstractAtomPlayer)?.collectBufferingLeaves(leaves)
+        }
+    }
+
+    internal fun root(): AbstractAtomPlayer {
+        var player = this
+        while (true) {
+            player = player.parentPlayer ?: return player
+        }
+    }
+
+    /**
+     * 叶子播放器开始播放时调用，由根播放器的 [FrameTicker] 统一驱动位置回调，没有监听时不驱动
+     */
+    internal fun startPositionTicks() {
+        positionTicking = true
+        if (hasListeners()) {
+            root().requestPositionTicks()
+        }
+    }
+
+    internal fun stopPositionTicks() {
+        positionTicking = false
+    }
+
+    internal fun requestPositionTicks() {
+        val ticker = frameTicker ?: FrameTicker(this).also { frameTicker = it }
+        ticker.rate = positionUpdateRate
+        ticker.start()
+    }
+
+    /**
+     * 一次遍历采样整棵播放器树
+     *
+     * @return 是否仍有需要位置回调的播放器
+     */
+    internal fun dispatchPositionTick(): Boolean {
+        val ticking = positionTicking && hasListeners()
+        var active = ticking
+        if (ticking && isPlaying) {
+            onPositionTick()
+        }
+        val players = innerPlayers
+        for (i in players.indices) {
+            val player = players[i]
+            if (player is AbstractAtomPlayer && player.dispatchPositionTick()) {
+                active = true
+            }
+        }
+        return active
+    }
+
+    internal open fun onPositionTick() {
+        dispatchPositionChanged(currentPosition())
+    }
+
+    /**
+     * 来自录制信息的时长，单位毫秒，为 -1 时不使用
+     *
+     * 叶子播放器准备完成前 [duration] 返回该值，组合播放器在内部播放器时长未知时返回该值。
+     */
+    var durationHint: Long = -1
+        set(value) {
+            field = value
+            invalidateDuration()
+        }
+
+    private var durationCache = -1L
+    private var durationValid = false
+
+    /**
+     * 组合播放器由内部播放器计算时长，结果缓存至下次 [invalidateDuration]
+     */
+    internal open fun computeDuration(): Long = -1
+
+    internal fun cachedDuration(): Long {
+        if (!durationValid) {
+            val duration = computeDuration()
+            durationCache = if (duration < 0) durationHint else duration
+            durationValid = true
+        }
+        return durationCache
+    }
+
+    /**
+     * 时长可能变化时调用，清除本播放器及上层播放器缓存的时长
+     */
+    internal fun invalidateDuration() {
+        var player: AbstractAtomPlayer? = this
+        while (player != null) {
+            player.durationValid = false
+            player = player.parentPlayer
+        }
+    }
+
+    /**
+     * 组合播放器的插值进度，由 [dispatchPositionChanged] 与 [dispatchSeekTo] 更新
+     */
+    internal open val positionInterpolator: PositionInterpolator?
+        get() = null
+
+    /**
+     * 组合播放器的 [currentPosition]，不超过已知的时长
+     */
+    internal fun interpolatedPosition(): Long {
+        val position = positionInterpolator?.position(clock, playbackSpeed) ?: return 0
+        val duration = duration()
+        return if (duration > 0) position.coerceAtMost(duration) else position
+    }
+
+    /**
+     * 组合播放器直接持有的内部播放器
+     */
+    internal open val innerPlayers: List<AtomPlayer>
+        get() = emptyList()
+
+    /**
+     * 组合播放器接管内部播放器时调用，使整棵树共享同一时钟
+     */
+    internal fun adopt(player: AtomPlayer) {
+        if (player is AbstractAtomPlayer) {
+            player.parentPlayer = this
+            player.clock = clock
+            invalidateDuration()
+            root().rebalanceBuffers()
+        }
+    }
+
+    private var prepareStartNanos = 0L
+
+    /**
+     * 首次 prepare 至首帧的耗时，单位毫秒，尚未出现首帧时为 -1
+     *
+     * 视频播放器为首帧渲染，其余播放器与组合播放器为首次 Ready
+     */
+    var timeToFirstFrame = -1L
+        private set
+
+    /**
+     * 是否由播放器自行调用 [markFirstFrame]，否则以首次 Ready 为准
+     */
+    internal open val reportsFirstFrame: Boolean
+        get() = false
+
+    internal fun markFirstFrame() {
+        if (timeToFirstFrame == -1L && prepareStartNanos != 0L) {
+            timeToFirstFrame = (clock.elapsedRealtimeNanos() - prepareStartNanos) / 1_000_000
+            Log.d("[$name] time to first frame $timeToFirstFrame ms")
+        }
+    }
+
+    /**
+     * 播放器树中各播放器的首帧耗时，包括本播放器，按树的先序排列
+     */
+    fun firstFrameReport(): Map<AtomPlayer, Long> {
+        val report = LinkedHashMap<AtomPlayer, Long>()
+        collectFirstFrames(report)
+        return report
+    }
+
+    private fun collectFirstFrames(report: MutableMap<AtomPlayer, Long>) {
+        report[this] = timeToFirstFrame
+        innerPlayers.forEach {
+            if (it is AbstractAtomPlayer && it !is FakePlayer) {
+                it.collectFirstFrames(report)
+            }
+        }
+    }
+
+    /**
+     * 是否支持 [hibernate]，组合播放器需所有内部播放器都支持
+     */
+    internal open fun canHibernate(): Boolean {
+        val players = innerPlayers
+        return players.isNotEmpty() && players.all { it is AbstractAtomPlayer && it.canHibernate() }
+    }
+
+    /**
+     * 释放解码器、缓冲等资源并回到 Idle，再次 [prepare] 时恢复，仅在 [canHibernate] 时调用
+     */
+    internal open fun hibernate() {
+        innerPlayers.forEach {
+            (it as AbstractAtomPlayer).hibernate()
+        }
+        stopPositionTicks()
+        targetPhase = AtomPlayerPhase.Idle
+        updatePlayerPhase(AtomPlayerPhase.Idle)
+    }
+
     override fun prepare() {
+        if (prepareStartNanos == 0L) {
+            prepareStartNanos = clock.elapsedRealtimeNanos()
+        }
         if (!isPreparing) {
             targetPhase = AtomPlayerPhase.Ready
             playerError = null
@@ -83,6 +445,10 @@ abstract class AbstractAtomPlayer : AtomPlayer {
     }
 
     override fun seekTo(timeMs: Long) {
+        if (scrubMode) {
+            scrubTarget = timeMs
+        }
+        seekPending = true
         if (isInPlaybackState() && timeMs <= duration()) {
             seekToInternal(timeMs)
         } else {
@@ -91,10 +457,86 @@ abstract class AbstractAtomPlayer : AtomPlayer {
                 pauseInternal()
                 updatePlayerPhase(AtomPlayerPhase.End)
             }
-            notifyChanged {
-                it.onSeekTo(this, timeMs)
+            dispatchSeekTo(timeMs)
+        }
+    }
+
+    /**
+     * seek 并返回可取消的 [SeekHandle]
+     *
+     * 所有叶子播放器回调 onSeekTo 且缓冲可播放后句柄完成，超过 [timeoutMs] 则以超时结束。
+     * 之前由本播放器发起且未结束的句柄被取消。
+     */
+    @JvmOverloads
+    fun seekToAsync(
+        timeMs: Long,
+        timeoutMs: Long = DEFAULT_SEEK_TIMEOUT,
+        listener: SeekHandle.Listener? = null,
+    ): SeekHandle {
+        seekHandles.toList().forEach { it.cancel() }
+        val handle = SeekHandle(timeMs, this, listener)
+        seekHandles += handle
+        eventHandler.postDelayed(handle.timeout, timeoutMs)
+        seekTo(timeMs)
+        checkSeekHandles()
+        return handle
+    }
+
+    internal fun removeSeekHandle(handle: SeekHandle) {
+        eventHandler.removeCallbacks(handle.timeout)
+        seekHandles -= handle
+    }
+
+    /**
+     * 叶子播放器当前位置的缓冲是否可播放，缓冲状态变化时需调用 [notifySeekProgress]
+     */
+    internal open fun isBufferReady(): Boolean = true
+
+    /**
+     * 本播放器及所有内部播放器是否已完成 seek 并可播放
+     */
+    internal fun isSeekLanded(): Boolean {
+        if (currentPhase == AtomPlayerPhase.End) {
+            return true
+        }
+        if (seekPending || currentPhase == AtomPlayerPhase.Idle || currentPhase == AtomPlayerPhase.Buffering) {
+            return false
+        }
+        if (!isBufferReady()) {
+            return false
+        }
+        val players = innerPlayers
+        for (i in players.indices) {
+            val player = players[i]
+            val landed = if (player is AbstractAtomPlayer) {
+                // 尚未准备或已休眠的内部播放器不参与
+                player.currentPhase == AtomPlayerPhase.Idle || player.isSeekLanded()
+            } else {
+                player.currentPhase != AtomPlayerPhase.Idle && player.currentPhase != AtomPlayerPhase.Buffering
+            }
+            if (!landed) {
+                return false
             }
         }
+        return true
+    }
+
+    /**
+     * seek 或缓冲状态变化时，检查本播放器及上层播放器持有的 [SeekHandle]
+     */
+    internal fun notifySeekProgress() {
+        var player: AbstractAtomPlayer? = this
+        while (player != null) {
+            player.checkSeekHandles()
+            player = player.parentPlayer
+        }
+    }
+
+    private fun checkSeekHandles() {
+        if (seekHandles.isEmpty() || !isSeekLanded()) {
+            return
+        }
+        seekHandles.toList().forEach { it.finish(SeekHandle.State.Completed) }
     }
 
     override fun stop() {
@@ -118,32 +560,120 @@ abstract class AbstractAtomPlayer : AtomPlayer {
 
     override fun setPlayerContainer(container: ViewGroup) {}
 
-    private val listeners = CopyOnWriteArraySet<AtomPlayerListener>()
+    /**
+     * 用户注册的监听，事件统一 post 至主线程回调
+     */
+    @Volatile
+    private var listeners = emptyArray<AtomPlayerListener>()
+
+    /**
+     * 上层组合播放器注册的监听，事件同步回调，不分配对象也不经过 Looper
+     */
+    @Volatile
+    private var internalListeners = emptyArray<AtomPlayerListener>()
 
+    private val listenerHandler = ListenerHandler(Looper.getMainLooper())
+
+    @Synchronized
     override fun addPlayerListener(listener: AtomPlayerListener) {
-        listeners.add(listener)
+        if (listener !in listeners) {
+            listeners += listener
+            onListenerAdded()
+        }
     }
 
+    @Synchronized
     override fun removePlayerListener(listener: AtomPlayerListener) {
-        listeners.remove(listener)
+        listeners = listeners.filter { it != listener }.toTypedArray()
     }
 
-    internal fun notifyChanged(invoke: (listener: AtomPlayerListener) -> Unit) {
-        eventHandler.post {
-            listeners.forEach(invoke)
+    @Synchronized
+    internal fun addInternalListener(listener: AtomPlayerListener) {
+        if (listener !in internalListeners) {
+            internalListeners += listener
+            onListenerAdded()
         }
     }
 
+    private fun hasListeners(): Boolean {
+        return listeners.isNotEmpty() || internalListeners.isNotEmpty()
+    }
+
     /**
-     * 更新并发送异步通知
+     * 播放中首次添加监听时补上位置回调，[FrameTicker] 只在主线程启动
+     */
+    private fun onListenerAdded() {
+        if (positionTicking && listeners.size + internalListeners.size == 1) {
+            eventHandler.post { root().requestPositionTicks() }
+        }
+    }
+
+    /**
+     * 组合播放器监听内部播放器，内部播放器为 [AbstractAtomPlayer] 时走同步回调
+     */
+    internal fun listenTo(player: AtomPlayer, listener: AtomPlayerListener) {
+        if (player is AbstractAtomPlayer) {
+            player.addInternalListener(listener)
+        } else {
+            player.addPlayerListener(listener)
+        }
+    }
+
+    internal fun dispatchPositionChanged(position: Long) {
+        positionInterpolator?.update(position, clock)
+        val internals = internalListeners
+        for (i in internals.indices) {
+            internals[i].onPositionChanged(this, position)
+        }
+        if (listeners.isNotEmpty()) {
+            listenerHandler.sendEvent(EVENT_POSITION_CHANGED, position)
+        }
+    }
+
+    internal fun dispatchSeekTo(timeMs: Long) {
+        seekPending = false
+        positionInterpolator?.update(timeMs, clock)
+        val internals = internalListeners
+        for (i in internals.indices) {
+            internals[i].onSeekTo(this, timeMs)
+        }
+        if (listeners.isNotEmpty()) {
+            listenerHandler.sendEvent(EVENT_SEEK_TO, timeMs)
+        }
+        notifySeekProgress()
+    }
+
+    private fun dispatchPhaseChanged(phase: AtomPlayerPhase) {
+        val internals = internalListeners
+        for (i in internals.indices) {
+            internals[i].onPhaseChanged(this, phase)
+        }
+        if (listeners.isNotEmpty()) {
+            listenerHandler.sendEvent(EVENT_PHASE_CHANGED, phase.ordinal.toLong())
+        }
+    }
+
+    /**
+     * 更新状态，内部监听同步通知，用户监听异步通知
      */
     internal fun updatePlayerPhase(newPhase: AtomPlayerPhase) {
         Log.d("[$name] updatePlayerPhase to $newPhase, from $currentPhase")
 
         if (currentPhase != newPhase) {
+            if (currentPhase == AtomPlayerPhase.Idle || newPhase == AtomPlayerPhase.Idle) {
+                // 叶子播放器准备完成或休眠后时长可用性变化
+                invalidateDuration()
+            }
             currentPhase = newPhase
-            notifyChanged {
-                it.onPhaseChanged(this, newPhase)
+            positionInterpolator?.setPlaying(newPhase == AtomPlayerPhase.Playing, clock, playbackSpeed)
+            if (newPhase == AtomPlayerPhase.Ready && !reportsFirstFrame) {
+                markFirstFrame()
+            }
+            dispatchPhaseChanged(newPhase)
+            notifySeekProgress()
+            if (parentPlayer == null) {
+                bandwidthScheduler?.onRootPhaseChanged(newPhase)
+                decoderBudget?.onRootPhaseChanged(newPhase)
             }
         }
     }
@@ -156,84 +686,120 @@ abstract class AbstractAtomPlayer : AtomPlayer {
         internal const val INTERNAL_END = 5
         internal const val INTERNAL_ERROR = 6
         internal const val INTERNAL_SEEK_COMPLETE = 7
+
+        const val DEFAULT_SEEK_TIMEOUT = 10_000L
+
+        const val DEFAULT_BUFFER_MEMORY_BUDGET = 96L * 1024 * 1024
+
+        private const val EVENT_POSITION_CHANGED = 1
+        private const val EVENT_PHASE_CHANGED = 2
+        private const val EVENT_SEEK_TO = 3
+
+        private val PHASES = AtomPlayerPhase.values()
     }
 
-    inner class EventHandler(looper: Looper) : Handler(looper) {
-        override fun handleMessage(msg: Message) {
-            Log.d("[$name] event ${message(msg)} when $currentPhase, targetPhase $targetPhase")
-
-            when (msg.what) {
-                INTERNAL_READY -> {
-                    updatePlayerPhase(AtomPlayerPhase.Ready)
-                    when (targetPhase) {
-                        AtomPlayerPhase.Playing -> {
-                            playInternal()
-                            updatePlayerPhase(AtomPlayerPhase.Playing)
-                        }
-                        AtomPlayerPhase.Paused -> {
-                            pauseInternal()
-                            updatePlayerPhase(AtomPlayerPhase.Paused)
-                        }
-                        else -> {; }
-                    }
-                }
-                INTERNAL_PLAYING -> {
-                    if (currentPhase == AtomPlayerPhase.Buffering) {
+    /**
+     * 组合播放器可直接调用，与 [eventHandler] 处理的消息一致，但同步执行
+     */
+    internal fun handleInternalEvent(what: Int, obj: Any? = null) {
+        Log.d("[$name] event ${eventName(what)} when $currentPhase, targetPhase $targetPhase")
+
+        when (what) {
+            INTERNAL_READY -> {
+                updatePlayerPhase(AtomPlayerPhase.Ready)
+                when (targetPhase) {
+                    AtomPlayerPhase.Playing -> {
+                        playInternal()
                         updatePlayerPhase(AtomPlayerPhase.Playing)
-                    } else if (currentPhase == AtomPlayerPhase.Paused) {
-                        // nothing
-                    } else {
-                        if (targetPhase == AtomPlayerPhase.Paused) {
-                            pauseInternal()
-                        } else {
-                            Log.w("[$name] onPlaying when $currentPhase")
-                        }
                     }
-                }
-                INTERNAL_PAUSED -> {
-                    when (currentPhase) {
-                        AtomPlayerPhase.Buffering -> {
-                            updatePlayerPhase(AtomPlayerPhase.Paused)
-                        }
-                        AtomPlayerPhase.Paused -> {
-                            // nothing
-                        }
-                        else -> {
-                            Log.w("[$name] onPaused when $currentPhase")
-                        }
+                    AtomPlayerPhase.Paused -> {
+                        pauseInternal()
+                        updatePlayerPhase(AtomPlayerPhase.Paused)
                     }
+                    else -> {; }
                 }
-                INTERNAL_BUFFERING -> {
-                    if (currentPhase == AtomPlayerPhase.Playing) {
-                        updatePlayerPhase(AtomPlayerPhase.Buffering)
-                    } else if (currentPhase == AtomPlayerPhase.Paused) {
+            }
+            INTERNAL_PLAYING -> {
+                if (currentPhase == AtomPlayerPhase.Buffering) {
+                    updatePlayerPhase(AtomPlayerPhase.Playing)
+                } else if (currentPhase == AtomPlayerPhase.Paused) {
+                    // nothing
+                } else {
+                    if (targetPhase == AtomPlayerPhase.Paused) {
                         pauseInternal()
+                    } else {
+                        Log.w("[$name] onPlaying when $currentPhase")
                     }
                 }
-                INTERNAL_END -> {
-                    updatePlayerPhase(AtomPlayerPhase.End)
+            }
+            INTERNAL_PAUSED -> {
+                when (currentPhase) {
+                    AtomPlayerPhase.Buffering -> {
+                        updatePlayerPhase(AtomPlayerPhase.Paused)
+                    }
+                    AtomPlayerPhase.Paused -> {
+                        // nothing
+                    }
+                    else -> {
+                        Log.w("[$name] onPaused when $currentPhase")
+                    }
                 }
-                INTERNAL_ERROR -> {
-                    playerError = msg.obj as Exception
-                    updatePlayerPhase(AtomPlayerPhase.Idle)
+            }
+            INTERNAL_BUFFERING -> {
+                if (currentPhase == AtomPlayerPhase.Playing) {
+                    updatePlayerPhase(AtomPlayerPhase.Buffering)
+                } else if (currentPhase == AtomPlayerPhase.Paused) {
+                    pauseInternal()
                 }
             }
+            INTERNAL_END -> {
+                updatePlayerPhase(AtomPlayerPhase.End)
+            }
+            INTERNAL_ERROR -> {
+                playerError = obj as Exception
+                updatePlayerPhase(AtomPlayerPhase.Idle)
+            }
+        }
+    }
+
+    inner class EventHandler(looper: Looper) : Handler(looper) {
+        override fun handleMessage(msg: Message) {
+            handleInternalEvent(msg.what, msg.obj)
             super.handleMessage(msg)
         }
+    }
+
+    private fun eventName(what: Int): String {
+        return when (what) {
+            INTERNAL_READY -> "InternalReady"
+            INTERNAL_PLAYING -> "InternalPlaying"
+            INTERNAL_BUFFERING -> "InternalBuffering"
+            INTERNAL_PAUSED -> "InternalPaused"
+            INTERNAL_END -> "InternalEnd"
+            INTERNAL_ERROR -> "InternalError"
+            INTERNAL_SEEK_COMPLETE -> "InternalSeekEnd"
+            else -> what.toString()
+        }
+    }
+
+    /**
+     * 用户监听的回调，事件参数拆分存入 Message 的 arg1/arg2，借助 Message 池避免分配
+     */
+    private inner class ListenerHandler(looper: Looper) : Handler(looper) {
+        fun sendEvent(what: Int, value: Long) {
+            obtainMessage(what, (value ushr 32).toInt(), value.toInt()).sendToTarget()
+        }
 
-        private fun message(msg: Message): String {
-            val msgType = when (msg.what) {
-                INTERNAL_READY -> "InternalReady"
-                INTERNAL_PLAYING -> "InternalPlaying"
-                INTERNAL_BUFFERING -> "InternalBuffering"
-                INTERNAL_PAUSED -> "InternalPaused"
-                INTERNAL_END -> "InternalEnd"
-                INTERNAL_ERROR -> "InternalError"
-                INTERNAL_SEEK_COMPLETE -> "InternalSeekEnd"
-                else -> msg.what.toString()
+        override fun handleMessage(msg: Message) {
+            val value = (msg.arg1.toLong() shl 32) or (msg.arg2.toLong() and 0xFFFFFFFFL)
+            val targets = listeners
+            for (i in targets.indices) {
+                when (msg.what) {
+                    EVENT_POSITION_CHANGED -> targets[i].onPositionChanged(this@AbstractAtomPlayer, value)
+                    EVENT_PHASE_CHANGED -> targets[i].onPhaseChanged(this@AbstractAtomPlayer, PHASES[value.toInt()])
+                    EVENT_SEEK_TO -> targets[i].onSeekTo(this@AbstractAtomPlayer, value)
+                }
             }
-            return msgType
         }
     }
 }
-
@@ -0,0 +1,145 @@
+package com.agora.netless.syncplayer
+
+import android.os.Handler
+import android.os.Looper
+
+/**
+ * 叶子播放器之间的带宽调度
+ *
+ * 周期性采样各叶子播放器的缓冲时长，缓冲低于 [rebufferWatermarkMs] 的播放器进入紧急状态，
+ * 直至恢复到 [recoverWatermarkMs]。存在紧急播放器时，只保留 [primaryPlayer] 或缓冲最少的播放器继续加载，
+ * 其余播放器暂停加载，把带宽让给它。只在根播放器播放或缓冲时采样，其余状态下不限制加载。
+ * 通过 [AbstractAtomPlayer.bandwidthScheduler] 在根播放器上设置，需在播放器树组合完成后设置。
+ */
+class BandwidthScheduler @JvmOverloads constructor(
+    val rebufferWatermarkMs: Long = DEFAULT_REBUFFER_WATERMARK,
+    val recoverWatermarkMs: Long = DEFAULT_RECOVER_WATERMARK,
+    val intervalMs: Long = DEFAULT_INTERVAL,
+) {
+    companion object {
+        const val DEFAULT_REBUFFER_WATERMARK = 2_000L
+        const val DEFAULT_RECOVER_WATERMARK = 5_000L
+        const val DEFAULT_INTERVAL = 250L
+
+        /**
+         * 选出优先加载的播放器，同时更新各播放器的紧急状态
+         *
+         * @param buffered 各播放器已缓冲时长，负数表示不参与调度
+         * @param primary 主播放器下标，没有时为 -1
+         * @param critical 各播放器的紧急状态，调用后更新
+         * @return 优先加载的播放器下标，没有紧急播放器时为 -1
+         */
+        internal fun decide(
+            buffered: LongArray,
+            primary: Int,
+            rebufferWatermarkMs: Long,
+            recoverWatermarkMs: Long,
+            critical: BooleanArray,
+        ): Int {
+            var favored = -1
+            for (i in buffered.indices) {
+                if (buffered[i] < 0) {
+                    critical[i] = false
+                    continue
+                }
+                critical[i] = buffered[i] < if (critical[i]) recoverWatermarkMs else rebufferWatermarkMs
+                if (critical[i] && (favored == -1 || buffered[i] < buffered[favored])) {
+                    favored = i
+                }
+            }
+            if (primary != -1 && critical[primary]) {
+                favored = primary
+            }
+            return favored
+        }
+    }
+
+    /**
+     * 优先保证的播放器，可以是叶子播放器或包含它的组合播放器
+     */
+    var primaryPlayer: AtomPlayer? = null
+
+    private val handler = Handler(Looper.getMainLooper())
+
+    private var root: AbstractAtomPlayer? = null
+    private var leaves = emptyArray<AbstractAtomPlayer>()
+    private var buffered = LongArray(0)
+    private var critical = BooleanArray(0)
+    private var polling = false
+
+    private val scheduleRunnable = object : Runnable {
+        override fun run() {
+            schedule()
+            handler.postDelayed(this, intervalMs)
+        }
+    }
+
+    internal fun attach(root: AbstractAtomPlayer) {
+        this.root = root
+        val leaves = ArrayList<AbstractAtomPlayer>()
+        root.collectBufferingLeaves(leaves)
+        this.leaves = leaves.toTypedArray()
+        buffered = LongArray(leaves.size)
+        critical = BooleanArray(leaves.size)
+        onRootPhaseChanged(root.currentPhase)
+    }
+
+    internal fun detach() {
+        polling = false
+        handler.removeCallbacks(scheduleRunnable)
+        leaves.forEach { it.loadControl?.throttled = false }
+        root = null
+        leaves = emptyArray()
+    }
+
+    /**
+     * 根播放器进入播放或缓冲时开始采样，离开时停止采样并恢复所有播放器的加载
+     */
+    internal fun onRootPhaseChanged(phase: AtomPlayerPhase) {
+        val playing = phase == AtomPlayerPhase.Playing || phase == AtomPlayerPhase.Buffering
+        if (playing == polling) {
+            return
+        }
+        polling = playing
+        handler.removeCallbacks(scheduleRunnable)
+        if (playing) {
+            handler.post(scheduleRunnable)
+        } else {
+            critical.fill(false)
+            leaves.forEach { it.loadControl?.throttled = false }
+        }
+    }
+
+    private fun schedule() {
+        val root = root ?: return
+        var favored = -1
+        if (root.targetPhase == AtomPlayerPhase.Playing) {
+            for (i in leaves.indices) {
+                buffered[i] = leaves[i].bufferedAheadMs()
+            }
+            favored = decide(buffered, primaryIndex(), rebufferWatermarkMs, recoverWatermarkMs, critical)
+        }
+        for (i in leaves.indices) {
+            val throttled = favored != -1 && i != favored
+            val control = leaves[i].loadControl ?: continue
+            if (control.throttled != throttled) {
+                Log.d("[${leaves[i].name}] bandwidth throttled $throttled, buffered ${buffered[i]} ms")
+                control.throttled = throttled
+            }
+        }
+    }
+
+    private fun primaryIndex(): Int {
+        val primary = primaryPlayer ?: return -1
+        for (i in leaves.indices) {
+            var player: AbstractAtomPlayer? = leaves[i]
+            while (player != null) {
+                if (player == primary) {
+                    return i
+                }
+                player = player.parentPlayer
+            }
+        }
+        return -1
+    }
+}
@@ -0,0 +1,78 @@
+package com.agora.netless.syncplayer
+
+/**
+ * 多个 HLS 播放器之间的码率分配
+ *
+ * 按共享的带宽估计，依各叶子播放器 [BufferProfile.weight] 与可见面积分配码率上限，
+ * 避免每个播放器都按整条链路选择码率而同步振荡。不可见的播放器只分配 [minBitrate]。
+ * 通过 [AbstractAtomPlayer.bitratePolicy] 在根播放器上设置，需在播放器树组合完成后设置。
+ */
+class BitratePolicy @JvmOverloads constructor(
+    /**
+     * 实际分配占带宽估计的比例，为波动留出余量
+     */
+    val headroom: Float = DEFAULT_HEADROOM,
+    val minBitrate: Int = DEFAULT_MIN_BITRATE,
+) {
+    companion object {
+        const val DEFAULT_HEADROOM = 0.75f
+        const val DEFAULT_MIN_BITRATE = 200_000
+
+        /**
+         * 按权重分配码率，权重全为 0 时平均分配
+         */
+        internal fun allocate(bitrate: Long, weights: LongArray, minBitrate: Int, out: IntArray) {
+            val total = weights.sum()
+            for (i in weights.indices) {
+                val share = if (total == 0L) bitrate / weights.size else bitrate * weights[i] / total
+                out[i] = share.coerceIn(minBitrate.toLong(), Int.MAX_VALUE.toLong()).toInt()
+            }
+        }
+    }
+
+    private var leaves = emptyArray<AbstractAtomPlayer>()
+    private var weights = LongArray(0)
+    private var bitrates = IntArray(0)
+
+    private val estimateListener: (Long) -> Unit = { update(it) }
+
+    internal fun attach(root: AbstractAtomPlayer) {
+        val leaves = ArrayList<AbstractAtomPlayer>()
+        root.collectBufferingLeaves(leaves)
+        this.leaves = leaves.toTypedArray()
+        weights = LongArray(leaves.size)
+        bitrates = IntArray(leaves.size)
+        SharedBandwidthMeter.addListener(estimateListener)
+        update()
+    }
+
+    internal fun detach() {
+        SharedBandwidthMeter.removeListener(estimateListener)
+        leaves.forEach { it.setMaxVideoBitrate(Int.MAX_VALUE) }
+        leaves = emptyArray()
+    }
+
+    /**
+     * 带宽估计或播放器可见面积变化时重新分配
+     */
+    internal fun update(estimate: Long = SharedBandwidthMeter.bitrateEstimate()) {
+        if (leaves.isEmpty() || estimate <= 0) {
+            return
+        }
+        var visible = false
+        for (i in leaves.indices) {
+            val area = leaves[i].visibleArea()
+            visible = visible || area > 0
+            weights[i] = leaves[i].loadControl!!.profile.weight * area
+        }
+        if (!visible) {
+            for (i in leaves.indices) {
+                weights[i] = leaves[i].loadControl!!.profile.weight.toLong()
+            }
+        }
+        allocate((estimate * headroom).toLong(), weights, minBitrate, bitrates)
+        for (i in leaves.indices) {
+            leaves[i].setMaxVideoBitrate(bitrates[i])
+        }
+    }
+}
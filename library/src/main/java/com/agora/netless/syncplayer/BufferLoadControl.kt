@@ -0,0 +1,107 @@
+package com.agora.netless.syncplayer
+
+import com.google.android.exoplayer2.C
+import com.google.android.exoplayer2.LoadControl
+import com.google.android.exoplayer2.Renderer
+import com.google.android.exoplayer2.source.TrackGroupArray
+import com.google.android.exoplayer2.trackselection.ExoTrackSelection
+import com.google.android.exoplayer2.upstream.Allocator
+import com.google.android.exoplayer2.upstream.DefaultAllocator
+import com.google.android.exoplayer2.util.Util
+
+/**
+ * 按 [BufferProfile] 与分配到的内存上限控制加载的 LoadControl
+ *
+ * 配置与上限可在播放中修改，由 ExoPlayer 播放线程读取。回退缓冲时长只在创建 ExoPlayer 时读取一次。
+ */
+internal class BufferLoadControl(
+    @Volatile var profile: BufferProfile,
+) : LoadControl {
+    companion object {
+        /**
+         * 低于该缓冲时长时总是继续加载，避免内存上限过小导致无法起播
+         */
+        private const val MIN_LOADING_US = 500_000L
+
+        const val MIN_ALLOWED_BYTES = 2L * 1024 * 1024
+    }
+
+    private val allocator = DefaultAllocator(true, C.DEFAULT_BUFFER_SEGMENT_SIZE)
+
+    /**
+     * 允许占用的缓冲内存，由根播放器按权重分配
+     */
+    @Volatile
+    var allowedBytes: Long = Long.MAX_VALUE
+
+    /**
+     * 带宽让给其他播放器，缓冲高于最低值后暂停加载
+     */
+    @Volatile
+    var throttled = false
+
+    private var isLoading = false
+
+    override fun onPrepared() {
+        reset()
+    }
+
+    override fun onTracksSelected(
+        renderers: Array<out Renderer>,
+        trackGroups: TrackGroupArray,
+        trackSelections: Array<out ExoTrackSelection>
+    ) {
+    }
+
+    override fun onStopped() {
+        reset()
+    }
+
+    override fun onReleased() {
+        reset()
+    }
+
+    override fun getAllocator(): Allocator = allocator
+
+    override fun getBackBufferDurationUs(): Long = profile.backBufferMs * 1000L
+
+    override fun retainBackBufferFromKeyframe(): Boolean = false
+
+    override fun shouldContinueLoading(
+        playbackPositionUs: Long,
+        bufferedDurationUs: Long,
+        playbackSpeed: Float
+    ): Boolean {
+        val profile = profile
+        val bytesReached = allocator.totalBytesAllocated >= allowedBytes
+        var minBufferUs = Util.getMediaDurationForPlayoutDuration(profile.minBufferMs * 1000L, playbackSpeed)
+        minBufferUs = minBufferUs.coerceAtMost(profile.maxBufferMs * 1000L)
+        isLoading = when {
+            bufferedDurationUs < MIN_LOADING_US -> true
+            throttled -> false
+            bufferedDurationUs < minBufferUs -> !bytesReached
+            bufferedDurationUs >= profile.maxBufferMs * 1000L || bytesReached -> false
+            else -> isLoading
+        }
+        return isLoading
+    }
+
+    override fun shouldStartPlayback(
+        bufferedDurationUs: Long,
+        playbackSpeed: Float,
+        rebuffering: Boolean,
+        targetLiveOffsetUs: Long
+    ): Boolean {
+        val profile = profile
+        val playoutUs = Util.getPlayoutDurationForMediaDuration(bufferedDurationUs, playbackSpeed)
+        val minBufferMs = if (rebuffering) profile.bufferForPlaybackAfterRebufferMs else profile.bufferForPlaybackMs
+        return minBufferMs <= 0
+            || playoutUs >= minBufferMs * 1000L
+            || allocator.totalBytesAllocated >= allowedBytes
+    }
+
+    private fun reset() {
+        isLoading = false
+        allocator.reset()
+    }
+}
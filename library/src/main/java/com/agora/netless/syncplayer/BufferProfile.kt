@@ -0,0 +1,37 @@
+package com.agora.netless.syncplayer
+
+/**
+ * 叶子播放器的缓冲配置，按在组合中的角色选择
+ *
+ * [weight] 决定该播放器在根播放器 [AbstractAtomPlayer.bufferMemoryBudget] 中所占份额。
+ * 时长单位均为毫秒。ExoPlayer 只在创建时读取一次回退缓冲时长，[ExoPlayerPool] 中的播放器由各角色共用，
+ * 因此 [backBufferMs] 不再按角色生效，所有播放器均使用 [PRIMARY] 的值。
+ */
+enum class BufferProfile(
+    val minBufferMs: Int,
+    val maxBufferMs: Int,
+    val bufferForPlaybackMs: Int,
+    val bufferForPlaybackAfterRebufferMs: Int,
+    val backBufferMs: Int,
+    val weight: Int,
+) {
+    /**
+     * 主画面，如主讲人视频
+     */
+    PRIMARY(15_000, 30_000, 1_000, 2_000, 5_000, 4),
+
+    /**
+     * 次要画面
+     */
+    SECONDARY(8_000, 15_000, 1_000, 2_000, 3_000, 2),
+
+    /**
+     * 缩略图宫格中的小窗口
+     */
+    THUMBNAIL(3_000, 6_000, 500, 1_000, 2_000, 1),
+
+    /**
+     * 紧邻空白段的播放器，只需覆盖空白结束后的起播
+     */
+    GAP_ADJACENT(2_000, 4_000, 500, 1_000, 2_000, 1),
+}
@@ -0,0 +1,204 @@
+package com.agora.netless.syncplayer
+
+/**
+ * 组合播放器的缓冲策略
+ *
+ * 子播放器缓冲超过 [stallToleranceMs] 仍未恢复时，整组暂停并进入 Buffering；
+ * 所有子播放器已缓冲时长达到 [resumeWatermarkMs] 后才整体恢复，最多等待 [maxResumeWaitMs]，
+ * [maxResumeWaitMs] 为 0 时不限等待时长，直到达到水位。
+ * 时长单位均为毫秒，默认全部为 0：不容忍卡顿、不等待水位，与子播放器缓冲即暂停、恢复即播放的原有行为一致；
+ * 需要减少短暂卡顿造成的整组暂停时可使用 [TOLERANT]。
+ */
+data class BufferingPolicy @JvmOverloads constructor(
+    val stallToleranceMs: Long = DEFAULT_STALL_TOLERANCE,
+    val resumeWatermarkMs: Long = DEFAULT_RESUME_WATERMARK,
+    val maxResumeWaitMs: Long = DEFAULT_MAX_RESUME_WAIT,
+) {
+    companion object {
+        const val DEFAULT_STALL_TOLERANCE = 0L
+        const val DEFAULT_RESUME_WATERMARK = 0L
+        const val DEFAULT_MAX_RESUME_WAIT = 0L
+
+        /**
+         * 容忍 500 毫秒内的卡顿，恢复前等待缓冲 1.5 秒，最多等待 3 秒
+         */
+        @JvmField
+        val TOLERANT = BufferingPolicy(500L, 1_500L, 3_000L)
+    }
+}
+
+/**
+ * [SyncGroup] 的整组缓冲控制，记录卡顿次数与时长
+ *
+ * 因缓冲被暂停的子播放器在 [pauseReason] 中标记，其 Paused 回调不应视为用户暂停。
+ * [joining] 中标记的子播放器正在 seek 加入整组，其缓冲不触发也不延长整组卡顿。
+ */
+internal class GroupBuffering(
+    private val owner: AbstractAtomPlayer,
+    private val players: Array<AtomPlayer>,
+    private val pauseReason: BooleanArray,
+    private val joining: BooleanArray,
+) {
+    companion object {
+        private const val RESUME_CHECK_INTERVAL = 100L
+    }
+
+    var policy = BufferingPolicy()
+
+    var stalled = false
+        private set
+
+    var stallCount = 0
+        private set
+
+    private var stalledNanos = 0L
+    private var stallStartNanos = 0L
+
+    // 所有子播放器恢复后开始等待水位的时间
+    private var waitStartNanos = 0L
+
+    val stalledTimeMs: Long
+        get() {
+            val current = if (stalled) owner.clock.elapsedRealtimeNanos() - stallStartNanos else 0
+            return (stalledNanos + current) / 1_000_000
+        }
+
+    private var stallCheckPending = false
+
+    private val stallCheck = Runnable {
+        stallCheckPending = false
+        if (!stalled && anyBuffering()) {
+            stall()
+        }
+    }
+
+    private val resumeCheck = Runnable {
+        tryResume()
+    }
+
+    fun onBuffering(player: AtomPlayer) {
+        if (joining[players.indexOf(player)]) {
+            return
+        }
+        if (stalled) {
+            pauseOthers(player)
+            return
+        }
+        if (policy.stallToleranceMs <= 0) {
+            stall()
+        } else if (!stallCheckPending) {
+            stallCheckPending = true
+            owner.eventHandler.postDelayed(stallCheck, policy.stallToleranceMs)
+        }
+    }
+
+    /**
+     * @return 子播放器恢复播放是否可直接生效，整组卡顿期间返回 false：可立即恢复时整组已恢复，
+     * 否则该子播放器被暂停等待整体恢复
+     */
+    fun onPlaying(player: AtomPlayer): Boolean {
+        if (!stalled) {
+            if (!anyBuffering()) {
+                cancelStallCheck()
+            }
+            return true
+        }
+        // 整组可立即恢复时不必先暂停刚恢复的子播放器
+        if (!anyBuffering() && reachedWatermark()) {
+            owner.eventHandler.removeCallbacks(resumeCheck)
+            resume()
+            return false
+        }
+        pauseReason[players.indexOf(player)] = true
+        player.pause()
+        tryResume()
+        return false
+    }
+
+    /**
+     * 用户暂停或播放时调用，结束当前卡顿
+     */
+    fun reset() {
+        cancelStallCheck()
+        owner.eventHandler.removeCallbacks(resumeCheck)
+        if (stalled) {
+            endStall()
+        }
+        pauseReason.fill(false)
+    }
+
+    private fun stall() {
+        stalled = true
+        stallCount++
+        stallStartNanos = owner.clock.elapsedRealtimeNanos()
+        waitStartNanos = 0
+        Log.d("[${owner.name}] stall $stallCount")
+
+        pauseOthers(null)
+        owner.updatePlayerPhase(AtomPlayerPhase.Buffering)
+        tryResume()
+    }
+
+    private fun pauseOthers(player: AtomPlayer?) {
+        players.forEachIndexed { i, it ->
+            if (it != player && it.isPlaying) {
+                pauseReason[i] = true
+                it.pause()
+            }
+        }
+    }
+
+    private fun tryResume() {
+        owner.eventHandler.removeCallbacks(resumeCheck)
+        if (!stalled) {
+            return
+        }
+        if (anyBuffering()) {
+            waitStartNanos = 0
+            owner.eventHandler.postDelayed(resumeCheck, RESUME_CHECK_INTERVAL)
+            return
+        }
+        val now = owner.clock.elapsedRealtimeNanos()
+        if (waitStartNanos == 0L) {
+            waitStartNanos = now
+        }
+        val waitedMs = (now - waitStartNanos) / 1_000_000
+        if (!reachedWatermark() && (policy.maxResumeWaitMs <= 0 || waitedMs < policy.maxResumeWaitMs)) {
+            owner.eventHandler.postDelayed(resumeCheck, RESUME_CHECK_INTERVAL)
+            return
+        }
+        resume()
+    }
+
+    private fun reachedWatermark(): Boolean {
+        return players.indices.all { i ->
+            val player = players[i]
+            val buffered = (player as? AbstractAtomPlayer)?.bufferedAheadMs() ?: -1
+            joining[i] || buffered < 0 || buffered >= policy.resumeWatermarkMs || player.currentPhase == AtomPlayerPhase.End
+        }
+    }
+
+    private fun resume() {
+        endStall()
+        players.forEachIndexed { i, it ->
+            pauseReason[i] = false
+            if (!it.isPlaying && it.currentPhase != AtomPlayerPhase.End) {
+                it.play()
+            }
+        }
+        owner.updatePlayerPhase(AtomPlayerPhase.Playing)
+    }
+
+    private fun endStall() {
+        stalled = false
+        stalledNanos += owner.clock.elapsedRealtimeNanos() - stallStartNanos
+        Log.d("[${owner.name}] stall end, total $stalledTimeMs ms")
+    }
+
+    private fun cancelStallCheck() {
+        stallCheckPending = false
+        owner.eventHandler.removeCallbacks(stallCheck)
+    }
+
+    private fun anyBuffering() = players.indices.any { !joining[it] && players[it].currentPhase == AtomPlayerPhase.Buffering }
+}
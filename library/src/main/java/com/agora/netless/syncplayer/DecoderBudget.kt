@@ -0,0 +1,134 @@
+package com.agora.netless.syncplayer
+
+import android.os.Handler
+import android.os.Looper
+import com.google.android.exoplayer2.C
+import com.google.android.exoplayer2.ExoPlayer
+import com.google.android.exoplayer2.trackselection.DefaultTrackSelector
+
+/**
+ * 硬件视频解码器的分配
+ *
+ * 设备能同时运行的硬件解码器有限，只有可见面积最大的 [maxDecoders] 个叶子播放器保留视频解码，
+ * [OffsetPlayer] 空白结束前预先准备的播放器视为即将可见。其余播放器关闭视频渲染，音频与进度照常，
+ * 重新可见时恢复视频渲染并在当前位置重新定位。只在根播放器播放或缓冲时周期分配，其余状态下保持最近一次的分配。
+ * 通过 [AbstractAtomPlayer.decoderBudget] 在根播放器上设置，需在播放器树组合完成后设置。
+ */
+class DecoderBudget @JvmOverloads constructor(
+    val maxDecoders: Int = DEFAULT_MAX_DECODERS,
+    val intervalMs: Long = DEFAULT_INTERVAL,
+) {
+    companion object {
+        const val DEFAULT_MAX_DECODERS = 8
+        const val DEFAULT_INTERVAL = 500L
+
+        /**
+         * 按可见面积分配解码器，即将可见的播放器排在所有可见播放器之后
+         *
+         * @param areas 各播放器可见面积，负数表示不需要解码器
+         * @param prerolling 各播放器是否即将可见
+         * @param granted 分配结果
+         */
+        internal fun assign(areas: LongArray, prerolling: BooleanArray, maxDecoders: Int, granted: BooleanArray) {
+            granted.fill(false)
+            var remaining = maxDecoders
+            while (remaining > 0) {
+                var best = -1
+                for (i in areas.indices) {
+                    if (granted[i] || areas[i] < 0 || (areas[i] == 0L && !prerolling[i])) {
+                        continue
+                    }
+                    if (best == -1 || areas[i] > areas[best]) {
+                        best = i
+                    }
+                }
+                if (best == -1) {
+                    return
+                }
+                granted[best] = true
+                remaining--
+            }
+        }
+    }
+
+    private val handler = Handler(Looper.getMainLooper())
+
+    private var leaves = emptyArray<AbstractAtomPlayer>()
+    private var areas = LongArray(0)
+    private var prerolling = BooleanArray(0)
+    private var granted = BooleanArray(0)
+    private var polling = false
+
+    private val assignRunnable = object : Runnable {
+        override fun run() {
+            update()
+            handler.postDelayed(this, intervalMs)
+        }
+    }
+
+    internal fun attach(root: AbstractAtomPlayer) {
+        val leaves = ArrayList<AbstractAtomPlayer>()
+        root.collectBufferingLeaves(leaves)
+        this.leaves = leaves.toTypedArray()
+        areas = LongArray(leaves.size)
+        prerolling = BooleanArray(leaves.size)
+        granted = BooleanArray(leaves.size)
+        update()
+        onRootPhaseChanged(root.currentPhase)
+    }
+
+    internal fun detach() {
+        polling = false
+        handler.removeCallbacks(assignRunnable)
+        leaves.forEach { it.setVideoEnabled(true) }
+        leaves = emptyArray()
+    }
+
+    /**
+     * 根播放器进入播放或缓冲时开始周期分配，离开时分配最后一次后停止
+     */
+    internal fun onRootPhaseChanged(phase: AtomPlayerPhase) {
+        val playing = phase == AtomPlayerPhase.Playing || phase == AtomPlayerPhase.Buffering
+        if (playing == polling) {
+            return
+        }
+        polling = playing
+        handler.removeCallbacks(assignRunnable)
+        if (playing) {
+            handler.post(assignRunnable)
+        } else {
+            update()
+        }
+    }
+
+    private fun update() {
+        for (i in leaves.indices) {
+            val leaf = leaves[i]
+            val active = leaf.isInPlaybackState() && leaf.currentPhase != AtomPlayerPhase.End
+            areas[i] = if (active) leaf.visibleArea() else -1
+            prerolling[i] = leaf.isPrerolling()
+        }
+        assign(areas, prerolling, maxDecoders, granted)
+        for (i in leaves.indices) {
+            leaves[i].setVideoEnabled(granted[i])
+        }
+    }
+}
+
+/**
+ * 通过关闭视频渲染器释放解码器，返回是否发生变化
+ */
+internal fun DefaultTrackSelector.setVideoEnabled(player: ExoPlayer, enabled: Boolean): Boolean {
+    val builder = buildUponParameters()
+    var changed = false
+    for (i in 0 until player.rendererCount) {
+        if (player.getRendererType(i) == C.TRACK_TYPE_VIDEO && parameters.getRendererDisabled(i) == enabled) {
+            builder.setRendererDisabled(i, !enabled)
+            changed = true
+        }
+    }
+    if (changed) {
+        setParameters(builder)
+    }
+    return changed
+}
@@ -0,0 +1,89 @@
+package com.agora.netless.syncplayer
+
+import kotlin.math.abs
+
+/**
+ * 子播放器进度偏差修正
+ *
+ * 偏差在 [tolerance] 以内不做处理；超过 [tolerance] 时按偏差比例微调子播放器 playbackSpeed 追赶，
+ * 调整幅度不超过 [maxSpeedAdjust]；超过 [seekThreshold] 时才回退为 seek。
+ */
+class DriftController @JvmOverloads constructor(
+    var tolerance: Long = DEFAULT_TOLERANCE,
+    var seekThreshold: Long = DEFAULT_SEEK_THRESHOLD,
+    var maxSpeedAdjust: Float = DEFAULT_MAX_SPEED_ADJUST,
+) {
+    companion object {
+        const val DEFAULT_TOLERANCE = 40L
+        const val DEFAULT_SEEK_THRESHOLD = 1000L
+        const val DEFAULT_MAX_SPEED_ADJUST = 0.05f
+
+        /**
+         * 期望在该时长内追平偏差
+         */
+        private const val CATCH_UP_WINDOW = 1000f
+    }
+
+    private val skews = HashMap<AtomPlayer, Long>()
+    private val adjusted = HashSet<AtomPlayer>()
+
+    /**
+     * 子播放器相对同组其他播放器的实时偏差，正值表示落后
+     */
+    fun skewOf(player: AtomPlayer): Long {
+        return skews[player] ?: 0
+    }
+
+    /**
+     * 以同组正在播放的其他播放器中最靠前的进度为基准，修正 [player] 的偏差
+     */
+    internal fun correct(player: AtomPlayer, players: Array<AtomPlayer>, baseSpeed: Float) {
+        if (!player.isPlaying) {
+            return
+        }
+        var reference = Long.MIN_VALUE
+        players.forEach {
+            if (it != player && it.isPlaying) {
+                reference = reference.coerceAtLeast(it.currentPosition())
+            }
+        }
+        if (reference == Long.MIN_VALUE) {
+            restore(player, baseSpeed)
+            return
+        }
+
+        val skew = reference - player.currentPosition()
+        skews[player] = skew
+        when {
+            abs(skew) > seekThreshold -> {
+                Log.d("[${player.name}] drift $skew ms, seek to $reference")
+                restore(player, baseSpeed)
+                player.seekTo(reference)
+            }
+            abs(skew) > tolerance -> {
+                val adjust = (skew / CATCH_UP_WINDOW).coerceIn(-maxSpeedAdjust, maxSpeedAdjust)
+                player.playbackSpeed = baseSpeed * (1 + adjust)
+                adjusted.add(player)
+            }
+            else -> {
+                restore(player, baseSpeed)
+            }
+        }
+    }
+
+    /**
+     * seek、暂停或倍速变更后，恢复所有子播放器为基础倍速
+     */
+    internal fun reset(players: Array<AtomPlayer>, baseSpeed: Float) {
+        players.forEach {
+            restore(it, baseSpeed)
+        }
+        skews.clear()
+    }
+
+    private fun restore(player: AtomPlayer, baseSpeed: Float) {
+        if (adjusted.remove(player)) {
+            player.playbackSpeed = baseSpeed
+        }
+    }
+}
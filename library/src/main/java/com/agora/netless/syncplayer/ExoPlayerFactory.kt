@@ -0,0 +1,85 @@
+package com.agora.netless.syncplayer
+
+import android.content.Context
+import android.os.Handler
+import android.os.Looper
+import com.google.android.exoplayer2.SimpleExoPlayer
+import com.google.android.exoplayer2.trackselection.DefaultTrackSelector
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+
+/**
+ * 创建 ExoPlayer
+ *
+ * 创建渲染器与播放线程较耗时，均在后台线程进行：播放器绑定容器时预先创建，prepare 时池中没有空闲播放器也尚未预先创建的，
+ * 此时开始创建，完成后在主线程继续 prepare，主线程不等待。
+ * 创建的播放器均在主线程访问，不与具体播放器绑定，可经由 [ExoPlayerPool] 复用。
+ */
+internal object ExoPlayerFactory {
+    private val executor = Executors.newSingleThreadExecutor { Thread(it, "sync-player-factory") }
+
+    private val mainHandler = Handler(Looper.getMainLooper())
+
+    fun build(context: Context): PooledExoPlayer {
+        val trackSelector = DefaultTrackSelector(context.applicationContext)
+        val loadControl = SwitchingLoadControl()
+        val player = SimpleExoPlayer.Builder(context.applicationContext)
+            .setLoadControl(loadControl)
+            .setTrackSelector(trackSelector)
+            .setBandwidthMeter(SharedBandwidthMeter.get(context))
+            .setLooper(Looper.getMainLooper())
+            .build()
+        return PooledExoPlayer(player, trackSelector, loadControl)
+    }
+
+    fun buildAsync(context: Context): Future<PooledExoPlayer> {
+        return executor.submit<PooledExoPlayer> { build(context) }
+    }
+
+    /**
+     * 在后台创建播放器并放入 [ExoPlayerPool]
+     */
+    fun buildIntoPool(context: Context) {
+        executor.execute {
+            val pooled = build(context)
+            mainHandler.post { ExoPlayerPool.recycle(pooled) }
+        }
+    }
+
+    /**
+     * 后台创建结束后在主线程执行 [callback]，创建失败或被取消时同样执行
+     */
+    fun whenBuilt(future: Future<PooledExoPlayer>, callback: Runnable) {
+        // 单线程执行，该任务在创建任务完成后运行
+        executor.execute {
+            runCatching { future.get() }
+            mainHandler.post(callback)
+        }
+    }
+
+    /**
+     * 取得已完成的后台创建结果，创建失败时抛出其异常
+     */
+    fun await(future: Future<PooledExoPlayer>): PooledExoPlayer {
+        try {
+            return future.get()
+        } catch (e: ExecutionException) {
+            throw e.cause ?: e
+        }
+    }
+
+    /**
+     * 不再需要后台创建的播放器，已开始创建的在完成后放入 [ExoPlayerPool]
+     */
+    fun discard(future: Future<PooledExoPlayer>) {
+        if (future.cancel(false)) {
+            return
+        }
+        // 单线程执行，该任务在创建任务完成后运行
+        executor.execute {
+            val pooled = runCatching { future.get() }.getOrNull() ?: return@execute
+            mainHandler.post { ExoPlayerPool.recycle(pooled) }
+        }
+    }
+}
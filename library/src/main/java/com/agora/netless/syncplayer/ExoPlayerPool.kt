@@ -0,0 +1,252 @@
+package com.agora.netless.syncplayer
+
+import android.content.Context
+import android.os.Handler
+import android.os.Looper
+import android.os.SystemClock
+import com.google.android.exoplayer2.C
+import com.google.android.exoplayer2.LoadControl
+import com.google.android.exoplayer2.PlaybackParameters
+import com.google.android.exoplayer2.Renderer
+import com.google.android.exoplayer2.SeekParameters
+import com.google.android.exoplayer2.SimpleExoPlayer
+import com.google.android.exoplayer2.source.TrackGroupArray
+import com.google.android.exoplayer2.trackselection.DefaultTrackSelector
+import com.google.android.exoplayer2.trackselection.ExoTrackSelection
+import com.google.android.exoplayer2.upstream.Allocator
+import com.google.android.exoplayer2.upstream.DefaultAllocator
+import java.util.concurrent.Future
+
+/**
+ * 进程内共享的 ExoPlayer 池
+ *
+ * [VideoPlayer] 与 [MultiVideoPlayer] 在 prepare 时从池中借出播放器，没有空闲播放器时在后台创建，release 或休眠时归还，
+ * 打开下一个回放或切换画面时无需重新创建播放线程与渲染器。空闲播放器最多保留 [maxIdlePlayers] 个，
+ * 空闲超过 [idleTimeout] 毫秒后释放。只在主线程访问。
+ */
+object ExoPlayerPool {
+    const val DEFAULT_MAX_IDLE_PLAYERS = 4
+    const val DEFAULT_IDLE_TIMEOUT = 60_000L
+
+    private val idle = ArrayList<PooledExoPlayer>()
+
+    private val handler = Handler(Looper.getMainLooper())
+
+    private var built = 0
+    private var reused = 0
+
+    private val evictRunnable = Runnable { evict() }
+
+    /**
+     * 空闲播放器数量上限，为 0 时不复用
+     */
+    @JvmStatic
+    var maxIdlePlayers: Int = DEFAULT_MAX_IDLE_PLAYERS
+        set(value) {
+            field = value
+            trimTo(value)
+        }
+
+    /**
+     * 空闲播放器的保留时长，单位毫秒
+     */
+    @JvmStatic
+    var idleTimeout: Long = DEFAULT_IDLE_TIMEOUT
+
+    /**
+     * 当前空闲播放器数量
+     */
+    @JvmStatic
+    fun idleCount(): Int = idle.size
+
+    /**
+     * 借出时复用空闲播放器的比例，其余为后台新建，尚未借出时为 0
+     */
+    @JvmStatic
+    fun reuseRatio(): Float {
+        val total = built + reused
+        return if (total == 0) 0f else reused.toFloat() / total
+    }
+
+    /**
+     * 预先在后台创建播放器放入池中，数量不超过 [maxIdlePlayers]
+     */
+    @JvmStatic
+    fun prewarm(context: Context, count: Int) {
+        repeat(minOf(count, maxIdlePlayers - idle.size)) {
+            ExoPlayerFactory.buildIntoPool(context)
+        }
+    }
+
+    /**
+     * 释放所有空闲播放器
+     */
+    @JvmStatic
+    fun clear() {
+        trimTo(0)
+    }
+
+    /**
+     * 借出空闲播放器，没有时返回 null，由借用者在后台创建
+     */
+    internal fun acquireIdle(): PooledExoPlayer? {
+        if (idle.isEmpty()) {
+            return null
+        }
+        reused++
+        val pooled = idle.removeAt(idle.size - 1)
+        if (idle.isEmpty()) {
+            handler.removeCallbacks(evictRunnable)
+        }
+        return pooled
+    }
+
+    /**
+     * 借出后台为借用者创建完成的播放器，创建失败时抛出其异常
+     */
+    internal fun acquireBuilt(future: Future<PooledExoPlayer>): PooledExoPlayer {
+        val pooled = ExoPlayerFactory.await(future)
+        built++
+        return pooled
+    }
+
+    /**
+     * 归还播放器，清除媒体与播放参数，超出上限时直接释放
+     */
+    internal fun recycle(pooled: PooledExoPlayer) {
+        val player = pooled.player
+        if (idle.size >= maxIdlePlayers) {
+            // release 同步执行，借用者的 LoadControl 先收到 onReleased
+            player.release()
+            pooled.loadControl.target = null
+            return
+        }
+        player.stop()
+        pooled.loadControl.detach()
+        player.clearMediaItems()
+        player.playWhenReady = false
+        player.pauseAtEndOfMediaItems = false
+        player.playbackParameters = PlaybackParameters.DEFAULT
+        player.setSeekParameters(SeekParameters.DEFAULT)
+        pooled.idleSince = SystemClock.elapsedRealtime()
+        idle += pooled
+        handler.removeCallbacks(evictRunnable)
+        handler.postDelayed(evictRunnable, idleTimeout)
+    }
+
+    private fun evict() {
+        val now = SystemClock.elapsedRealtime()
+        val iterator = idle.iterator()
+        while (iterator.hasNext()) {
+            val pooled = iterator.next()
+            if (now - pooled.idleSince >= idleTimeout) {
+                iterator.remove()
+                pooled.player.release()
+            }
+        }
+        if (idle.isNotEmpty()) {
+            val oldest = idle.minOf { it.idleSince }
+            handler.postDelayed(evictRunnable, maxOf(0, oldest + idleTimeout - now))
+        }
+    }
+
+    private fun trimTo(size: Int) {
+        while (idle.size > maxOf(size, 0)) {
+            idle.removeAt(0).player.release()
+        }
+        if (idle.isEmpty()) {
+            handler.removeCallbacks(evictRunnable)
+        }
+    }
+}
+
+/**
+ * 池中的播放器及其 TrackSelector，借出时由借用者设置 [LoadControl] 与选轨参数
+ */
+internal class PooledExoPlayer(
+    val player: SimpleExoPlayer,
+    val trackSelector: DefaultTrackSelector,
+    val loadControl: SwitchingLoadControl,
+) {
+    var idleSince = 0L
+
+    fun attach(loadControl: LoadControl, parameters: DefaultTrackSelector.Parameters) {
+        this.loadControl.target = loadControl
+        trackSelector.setParameters(parameters)
+    }
+}
+
+/**
+ * 转发至借用者 LoadControl 的 LoadControl，空闲时不加载
+ *
+ * 归还时播放器已停止，之后创建的 MediaPeriod 才会使用新借用者的 Allocator。
+ * 回退缓冲时长只在创建 ExoPlayer 时读取一次，而池中的播放器会被不同角色的借用者复用，
+ * 因此不转发借用者的值，统一使用 [BufferProfile.PRIMARY] 的值，其余角色的回退缓冲相应变长。
+ */
+internal class SwitchingLoadControl : LoadControl {
+    @Volatile
+    var target: LoadControl? = null
+
+    // 已归还但播放线程尚未处理 stop 的借用者
+    @Volatile
+    private var detached: LoadControl? = null
+
+    /**
+     * 归还时在 stop 之后调用，stop 在播放线程异步执行，借用者在 [onStopped] 时仍会收到回调并重置
+     */
+    fun detach() {
+        detached = target
+        target = null
+    }
+
+    private val idleAllocator = DefaultAllocator(true, C.DEFAULT_BUFFER_SEGMENT_SIZE)
+
+    override fun onPrepared() {
+        target?.onPrepared()
+    }
+
+    override fun onTracksSelected(
+        renderers: Array<out Renderer>,
+        trackGroups: TrackGroupArray,
+        trackSelections: Array<out ExoTrackSelection>
+    ) {
+        target?.onTracksSelected(renderers, trackGroups, trackSelections)
+    }
+
+    override fun onStopped() {
+        detached?.onStopped()
+        detached = null
+        target?.onStopped()
+        idleAllocator.reset()
+    }
+
+    override fun onReleased() {
+        detached?.onReleased()
+        detached = null
+        target?.onReleased()
+        idleAllocator.reset()
+    }
+
+    override fun getAllocator(): Allocator = target?.allocator ?: idleAllocator
+
+    override fun getBackBufferDurationUs(): Long = BufferProfile.PRIMARY.backBufferMs * 1000L
+
+    override fun retainBackBufferFromKeyframe(): Boolean = false
+
+    override fun shouldContinueLoading(
+        playbackPositionUs: Long,
+        bufferedDurationUs: Long,
+        playbackSpeed: Float
+    ): Boolean {
+        return target?.shouldContinueLoading(playbackPositionUs, bufferedDurationUs, playbackSpeed) ?: false
+    }
+
+    override fun shouldStartPlayback(
+        bufferedDurationUs: Long,
+        playbackSpeed: Float,
+        rebuffering: Boolean,
+        targetLiveOffsetUs: Long
+    ): Boolean {
+        return target?.shouldStartPlayback(bufferedDurationUs, playbackSpeed, rebuffering, targetLiveOffsetUs) ?: false
+    }
+}
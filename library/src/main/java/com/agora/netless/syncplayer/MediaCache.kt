@@ -0,0 +1,131 @@
+package com.agora.netless.syncplayer
+
+import android.content.Context
+import com.google.android.exoplayer2.database.ExoDatabaseProvider
+import com.google.android.exoplayer2.upstream.DataSource
+import com.google.android.exoplayer2.upstream.DataSpec
+import com.google.android.exoplayer2.upstream.DefaultDataSourceFactory
+import com.google.android.exoplayer2.upstream.TransferListener
+import com.google.android.exoplayer2.upstream.cache.CacheDataSource
+import com.google.android.exoplayer2.upstream.cache.LeastRecentlyUsedCacheEvictor
+import com.google.android.exoplayer2.upstream.cache.SimpleCache
+import com.google.android.exoplayer2.util.Util
+import java.io.File
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * 进程内共享的媒体磁盘缓存，所有 [VideoPlayer] 与 [MultiVideoPlayer] 经由此读取数据
+ *
+ * 超出容量后按 LRU 淘汰。HLS 的播放列表与分片同样被缓存，重复观看时无需再次请求。
+ * 需在创建播放器前调用 [setMaxCacheSize] 修改容量。
+ */
+object MediaCache {
+    const val DEFAULT_MAX_CACHE_SIZE = 256L * 1024 * 1024
+
+    private const val CACHE_DIR = "sync-player-media"
+
+    private var maxCacheSize = DEFAULT_MAX_CACHE_SIZE
+
+    private var cache: SimpleCache? = null
+
+    private val cachedBytes = AtomicLong()
+    private val networkBytes = AtomicLong()
+
+    @JvmStatic
+    fun setMaxCacheSize(maxCacheSize: Long) {
+        if (cache != null) {
+            Log.w("MediaCache already created, max cache size $maxCacheSize ignored")
+            return
+        }
+        this.maxCacheSize = maxCacheSize
+    }
+
+    /**
+     * 从缓存读取的字节数
+     */
+    @JvmStatic
+    fun cachedBytesRead(): Long = cachedBytes.get()
+
+    /**
+     * 从网络读取的字节数
+     */
+    @JvmStatic
+    fun networkBytesRead(): Long = networkBytes.get()
+
+    /**
+     * 缓存命中率，尚无读取时为 0
+     */
+    @JvmStatic
+    fun hitRatio(): Float {
+        val cached = cachedBytes.get()
+        val total = cached + networkBytes.get()
+        return if (total == 0L) 0f else cached.toFloat() / total
+    }
+
+    @JvmStatic
+    fun resetStats() {
+        cachedBytes.set(0)
+        networkBytes.set(0)
+    }
+
+    @JvmStatic
+    @Synchronized
+    fun clear() {
+        cache?.let { cache ->
+            cache.keys.forEach { cache.removeResource(it) }
+        }
+        resetStats()
+    }
+
+    @Synchronized
+    private fun cache(context: Context): SimpleCache {
+        return cache ?: SimpleCache(
+            File(context.cacheDir, CACHE_DIR),
+            LeastRecentlyUsedCacheEvictor(maxCacheSize),
+            ExoDatabaseProvider(context),
+        ).also { cache = it }
+    }
+
+    internal fun dataSourceFactory(context: Context): DataSource.Factory {
+        val appContext = context.applicationContext
+        val upstreamFactory = DefaultDataSourceFactory(
+            appContext,
+            networkTransferListener,
+            DefaultDataSourceFactory(appContext, Util.getUserAgent(appContext, "SyncPlayer")),
+        )
+        return CacheDataSource.Factory()
+            .setCache(cache(appContext))
+            .setUpstreamDataSourceFactory(upstreamFactory)
+            .setFlags(CacheDataSource.FLAG_IGNORE_CACHE_ON_ERROR)
+            .setEventListener(cacheEventListener)
+    }
+
+    private val cacheEventListener = object : CacheDataSource.EventListener {
+        override fun onCachedBytesRead(cacheSizeBytes: Long, cachedBytesRead: Long) {
+            cachedBytes.addAndGet(cachedBytesRead)
+        }
+
+        override fun onCacheIgnored(reason: Int) {
+            Log.d("MediaCache ignored, reason $reason")
+        }
+    }
+
+    private val networkTransferListener = object : TransferListener {
+        override fun onTransferInitializing(source: DataSource, dataSpec: DataSpec, isNetwork: Boolean) {}
+
+        override fun onTransferStart(source: DataSource, dataSpec: DataSpec, isNetwork: Boolean) {}
+
+        override fun onBytesTransferred(
+            source: DataSource,
+            dataSpec: DataSpec,
+            isNetwork: Boolean,
+            bytesTransferred: Int
+        ) {
+            if (isNetwork) {
+                networkBytes.addAndGet(bytesTransferred.toLong())
+            }
+        }
+
+        override fun onTransferEnd(source: DataSource, dataSpec: DataSpec, isNetwork: Boolean) {}
+    }
+}
@@ -8,36 +8,99 @@ import android.widget.FrameLayout
 import com.agora.netless.syncplayer.ui.VideoPlayerView
 import com.google.android.exoplayer2.*
 import com.google.android.exoplayer2.audio.AudioAttributes
+import com.google.android.exoplayer2.source.ClippingMediaSource
+import com.google.android.exoplayer2.source.ConcatenatingMediaSource
 import com.google.android.exoplayer2.source.MediaSource
 import com.google.android.exoplayer2.source.ProgressiveMediaSource
+import com.google.android.exoplayer2.source.ShuffleOrder
 import com.google.android.exoplayer2.source.hls.HlsMediaSource
-import com.google.android.exoplayer2.upstream.DefaultDataSourceFactory
+import com.google.android.exoplayer2.trackselection.DefaultTrackSelector
 import com.google.android.exoplayer2.util.Util
+import java.util.concurrent.Future
 
 /**
  * 用于多段视频播放
+ *
+ * 所有视频在 prepare 时组成一个播放列表，只构建一次。下一段视频在当前视频播放期间或空白期间预先缓冲，
+ * 切换时无需重新 prepare，seek 回之前的视频也复用已构建的 MediaSource。
  */
 class MultiVideoPlayer constructor(
     private val context: Context,
     private val videos: List<VideoItem>,
 ) : AbstractAtomPlayer() {
-    private val selections = videos.mapIndexed { index, videoItem ->
-        Selection((if (index != 0) videos[index - 1].endTime else 0), videoItem.endTime)
+    // 每段视频在整体时间轴上占据的区间，包含视频前的空白
+    private val segments = SegmentIndex(
+        LongArray(videos.size) { if (it != 0) videos[it - 1].endTime else 0 },
+        LongArray(videos.size) { videos[it].endTime },
+    )
+
+    override val loadControl = BufferLoadControl(BufferProfile.PRIMARY)
+
+    /**
+     * 缓冲配置，回退缓冲时长在创建时确定，其余在播放中修改即时生效
+     */
+    var bufferProfile: BufferProfile
+        get() = loadControl.profile
+        set(value) {
+            loadControl.profile = value
+            root().rebalanceBuffers()
+        }
+
+    private var trackSelector = DefaultTrackSelector(context.applicationContext)
+
+    /**
+     * prepare 时从 [ExoPlayerPool] 借出，休眠或 release 时归还
+     */
+    private lateinit var exoPlayer: SimpleExoPlayer
+
+    private lateinit var pooledPlayer: PooledExoPlayer
+
+    private var hasExoPlayer = false
+
+    // 绑定容器或 prepare 时池中没有空闲播放器，在后台创建的播放器
+    private var pendingBuild: Future<PooledExoPlayer>? = null
+
+    // prepare 等待后台创建完成
+    private var buildAwaited = false
+
+    private var buildStartNanos = 0L
+
+    private val buildCallback = Runnable { onBuilt() }
+
+    /**
+     * 最近一次 prepare 至取得 ExoPlayer 的耗时，单位毫秒，期间不阻塞主线程，
+     * 池中有空闲播放器或后台已创建完成时接近 0，尚未创建时为 -1
+     */
+    var playerBuildTime: Long = -1
+        private set
+
+    private var container: ViewGroup? = null
+
+    // 容器尺寸变化时更新码率，更换容器时从旧容器移除
+    private val layoutListener = View.OnLayoutChangeListener { _, _, _, _, _, _, _, _, _ ->
+        root().bitratePolicy?.update()
     }
 
-    private val positionNotifier = PositionNotifier(eventHandler, this)
-    private var exoPlayer = SimpleExoPlayer.Builder(context.applicationContext).build()
-    private var dataSourceFactory = DefaultDataSourceFactory(context, "SyncPlayer")
+    private var playerView: VideoPlayerView? = null
+    private var dataSourceFactory = MediaCache.dataSourceFactory(context)
 
     private var fakePlayer = FakePlayer(0)
 
+    override val innerPlayers: List<AtomPlayer> = listOf(fakePlayer)
+
     private var videoPlaying = videos[0].beginTime == 0L
     private var currentSelection = 0
 
+    /**
+     * 切换分段时内部发起的 seek，不对外通知
+     */
+    private var internalSeeking = false
+
     private val interPlayerListener = object : Player.Listener {
         override fun onPlaybackStateChanged(state: Int) {
             Log.d("[$name] exoPlayer onPlaybackStateChanged $state")
 
+            notifySeekProgress()
             when (state) {
                 Player.STATE_IDLE -> {
                     updatePlayerPhase(AtomPlayerPhase.Idle)
@@ -61,11 +124,28 @@ class MultiVideoPlayer constructor(
                     }
                 }
                 Player.STATE_ENDED -> {
-                    playNext()
+                    if (videoPlaying) {
+                        playNext()
+                    }
                 }
             }
         }
 
+        override fun onPlayWhenReadyChanged(playWhenReady: Boolean, reason: Int) {
+            if (reason == Player.PLAY_WHEN_READY_CHANGE_REASON_END_OF_MEDIA_ITEM && videoPlaying) {
+                playNext()
+            }
+        }
+
+        override fun onMediaItemTransition(mediaItem: MediaItem?, reason: Int) {
+            if (reason == Player.MEDIA_ITEM_TRANSITION_REASON_AUTO) {
+                // 与下一段之间没有空白，由播放列表直接衔接
+                currentSelection = exoPlayer.currentWindowIndex
+                fakePlayer.updateDuration(currentFakeDuration())
+                updatePauseAtEndOfMediaItems()
+            }
+        }
+
         override fun onPlayerError(error: ExoPlaybackException) {
             eventHandler.obtainMessage(INTERNAL_ERROR, error).sendToTarget()
         }
@@ -73,9 +153,9 @@ class MultiVideoPlayer constructor(
         override fun onIsPlayingChanged(isPlaying: Boolean) {
             Log.d("[$name] exoPlayer onIsPlayingChanged $isPlaying")
             if (isPlaying) {
-                positionNotifier.start()
+                startPositionTicks()
             } else {
-                positionNotifier.stop()
+                stopPositionTicks()
             }
         }
 
@@ -84,40 +164,22 @@ class MultiVideoPlayer constructor(
             newPosition: Player.PositionInfo,
             reason: Int
         ) {
-            if (reason == Player.DISCONTINUITY_REASON_SEEK) {
+            if (reason == Player.DISCONTINUITY_REASON_SEEK && !internalSeeking) {
                 Log.d("[$name] exoPlayer position changed: ${exoPlayer.currentPosition}")
                 val pos = currentPosition()
-                notifyChanged {
-                    it.onSeekTo(this@MultiVideoPlayer, pos)
-                    it.onPositionChanged(this@MultiVideoPlayer, pos)
-                }
+                dispatchSeekTo(pos)
+                dispatchPositionChanged(pos)
             }
         }
     }
 
     init {
-        addPlayerListener(object : AtomPlayerListener {
-            override fun onPositionChanged(atomPlayer: AtomPlayer, position: Long) {
-                if (videoPlaying && validSelection()) {
-                    if (position > selections[currentSelection].end) {
-                        playNext()
-                    }
-                }
-            }
-        })
-        exoPlayer.addListener(interPlayerListener)
-        exoPlayer.setAudioAttributes(AudioAttributes.DEFAULT, false)
-        exoPlayer.playWhenReady = false
-
-        fakePlayer.addPlayerListener(object : AtomPlayerListener {
+        listenTo(fakePlayer, object : AtomPlayerListener {
             override fun onPositionChanged(atomPlayer: AtomPlayer, position: Long) {
                 if (validSelection()) {
-                    val selection = selections[currentSelection]
-                    if (position < selection.duration()) {
-                        Log.d("[$name] fakePlayer onPositionChanged: $position, notify ${selection.start + position}")
-                        notifyChanged {
-                            it.onPositionChanged(this@MultiVideoPlayer, selection.start + position)
-                        }
+                    val start = segments.start(currentSelection)
+                    if (position < segments.end(currentSelection) - start) {
+                        dispatchPositionChanged(start + position)
                     }
                 }
             }
@@ -132,35 +194,128 @@ class MultiVideoPlayer constructor(
             }
 
             override fun onSeekTo(atomPlayer: AtomPlayer, timeMs: Long) {
-                notifyChanged {
-                    it.onSeekTo(this@MultiVideoPlayer, timeMs)
+                if (!internalSeeking) {
+                    dispatchSeekTo(segments.start(currentSelection) + timeMs)
                 }
             }
         })
         fakePlayer.updateDuration(currentFakeDuration())
+        adopt(fakePlayer)
+    }
+
+    private fun buildAsync() {
+        if (!hasExoPlayer && pendingBuild == null && ExoPlayerPool.idleCount() == 0) {
+            pendingBuild = ExoPlayerFactory.buildAsync(context)
+        }
+    }
+
+    /**
+     * 取得 ExoPlayer，池中没有空闲播放器时在后台创建，完成后由 [onBuilt] 继续
+     *
+     * @return 是否已取得
+     */
+    private fun wake(): Boolean {
+        buildStartNanos = clock.elapsedRealtimeNanos()
+        val pooled = ExoPlayerPool.acquireIdle()
+        if (pooled != null) {
+            pendingBuild?.let { ExoPlayerFactory.discard(it) }
+            pendingBuild = null
+            usePooled(pooled)
+            return true
+        }
+        val pending = pendingBuild ?: ExoPlayerFactory.buildAsync(context).also { pendingBuild = it }
+        buildAwaited = true
+        if (pending.isDone) {
+            return takeBuilt()
+        }
+        ExoPlayerFactory.whenBuilt(pending, buildCallback)
+        return false
+    }
+
+    /**
+     * 后台创建结束，继续 prepare
+     */
+    private fun onBuilt() {
+        if (takeBuilt()) {
+            startMedia()
+        }
+    }
+
+    /**
+     * 取得后台创建的 ExoPlayer，prepare 已被 release 或休眠取消时忽略，创建失败时进入错误状态
+     */
+    private fun takeBuilt(): Boolean {
+        val pending = pendingBuild
+        if (!buildAwaited || pending == null || !pending.isDone) {
+            return false
+        }
+        buildAwaited = false
+        pendingBuild = null
+        val pooled = try {
+            ExoPlayerPool.acquireBuilt(pending)
+        } catch (e: Exception) {
+            Log.e("[$name] exoPlayer build failed", e)
+            handleInternalEvent(INTERNAL_ERROR, e)
+            return false
+        }
+        usePooled(pooled)
+        return true
+    }
+
+    private fun usePooled(pooled: PooledExoPlayer) {
+        pooledPlayer = pooled
+        pooledPlayer.attach(loadControl, trackSelector.parameters)
+        trackSelector = pooledPlayer.trackSelector
+        exoPlayer = pooledPlayer.player
+        hasExoPlayer = true
+        playerBuildTime = (clock.elapsedRealtimeNanos() - buildStartNanos) / 1_000_000
+        Log.d("[$name] exoPlayer ready in $playerBuildTime ms")
+
+        exoPlayer.addListener(interPlayerListener)
+        exoPlayer.setAudioAttributes(AudioAttributes.DEFAULT, false)
+        exoPlayer.playWhenReady = false
+        exoPlayer.playbackParameters = PlaybackParameters(playbackSpeed)
+        bindView()
+    }
+
+    private fun bindView() {
+        val container = container ?: return
+        if (playerView == null) {
+            playerView = VideoPlayerView(context).also {
+                container.addView(it)
+            }
+        }
+        playerView?.setPlayer(exoPlayer)
+    }
+
+    private fun unbindView() {
+        playerView?.setPlayer(null)
     }
 
     override fun setPlayerContainer(container: ViewGroup) {
         if (container !is FrameLayout) {
             throw IllegalArgumentException("videoPlayer container must be type of FrameLayout!")
         }
-        container.addView(bindPlayer(exoPlayer))
-    }
-
-    private fun bindPlayer(player: Player): View {
-        val playerView = VideoPlayerView(context).apply {
-            setPlayer(player)
+        this.container?.removeOnLayoutChangeListener(layoutListener)
+        this.container = container
+        container.addOnLayoutChangeListener(layoutListener)
+        if (hasExoPlayer) {
+            bindView()
+        } else {
+            buildAsync()
         }
-        return playerView
     }
 
     override fun seekToInternal(timeMs: Long) {
-        val index = selections.indexOfFirst { timeMs < it.end }
+        if (!hasExoPlayer) {
+            return
+        }
+        val index = segments.indexOf(timeMs)
         if (index != -1) {
             if (index != currentSelection) {
                 currentSelection = index
                 fakePlayer.updateDuration(currentFakeDuration())
-                setVideoPath(videos[currentSelection].videoURL)
+                updatePauseAtEndOfMediaItems()
             }
             seekCurrentSelection(timeMs)
         }
@@ -171,30 +326,70 @@ class MultiVideoPlayer constructor(
         if (videoPlaying) {
             fakePlayer.pause()
             exoPlayer.playWhenReady = true
-            exoPlayer.seekTo(currentPlayerPosition(timeMs))
+            exoPlayer.seekTo(currentSelection, currentPlayerPosition(timeMs))
         } else {
             exoPlayer.playWhenReady = false
+            preloadCurrentSelection()
             fakePlayer.seekTo(currentFakePosition(timeMs))
             fakePlayer.play()
         }
     }
 
     private fun currentFakeDuration() =
-        videos[currentSelection].beginTime - selections[currentSelection].start
+        videos[currentSelection].beginTime - segments.start(currentSelection)
 
-    private fun currentFakePosition(timeMs: Long) = timeMs - selections[currentSelection].start
+    private fun currentFakePosition(timeMs: Long) = timeMs - segments.start(currentSelection)
 
     private fun currentPlayerPosition(timeMs: Long) = timeMs - videos[currentSelection].beginTime
 
     override var playbackSpeed = 1.0f
         set(value) {
             field = value
-            exoPlayer.playbackParameters = PlaybackParameters(value)
+            if (hasExoPlayer) {
+                exoPlayer.playbackParameters = PlaybackParameters(value)
+            }
             fakePlayer.playbackSpeed = value
         }
 
+    override fun canHibernate(): Boolean = true
+
+    /**
+     * 将 ExoPlayer 归还 [ExoPlayerPool]，释放解码器与缓冲，回到第一段
+     */
+    override fun hibernate() {
+        releaseExoPlayer()
+        currentSelection = 0
+        videoPlaying = videos[0].beginTime == 0L
+        fakePlayer.updateDuration(currentFakeDuration())
+        super.hibernate()
+    }
+
+    private fun releaseExoPlayer() {
+        buildAwaited = false
+        pendingBuild?.let { ExoPlayerFactory.discard(it) }
+        pendingBuild = null
+        if (hasExoPlayer) {
+            hasExoPlayer = false
+            exoPlayer.removeListener(interPlayerListener)
+            unbindView()
+            // 选轨参数留在本播放器，池中的 TrackSelector 将由其他播放器使用
+            val parameters = trackSelector.parameters
+            trackSelector = DefaultTrackSelector(context.applicationContext).apply {
+                setParameters(parameters)
+            }
+            ExoPlayerPool.recycle(pooledPlayer)
+        }
+    }
+
     override fun prepareInternal() {
-        setVideoPath(videos[0].videoURL)
+        if (hasExoPlayer || wake()) {
+            startMedia()
+        }
+    }
+
+    private fun startMedia() {
+        exoPlayer.setMediaSource(createPlaylist())
+        updatePauseAtEndOfMediaItems()
         exoPlayer.prepare()
         fakePlayer.prepare()
     }
@@ -208,14 +403,16 @@ class MultiVideoPlayer constructor(
     }
 
     override fun pauseInternal() {
-        exoPlayer.playWhenReady = false
+        if (hasExoPlayer) {
+            exoPlayer.playWhenReady = false
+        }
         fakePlayer.pause()
     }
 
     override fun release() {
         fakePlayer.release()
-        exoPlayer.release()
-        positionNotifier.stop()
+        releaseExoPlayer()
+        stopPositionTicks()
     }
 
     override fun currentPosition(): Long {
@@ -223,50 +420,121 @@ class MultiVideoPlayer constructor(
             return 0
         }
         return if (validSelection()) {
-            if (isPlaying) {
+            if (videoPlaying) {
                 videos[currentSelection].beginTime + exoPlayer.currentPosition
             } else {
-                selections[currentSelection].start + fakePlayer.currentPosition()
+                segments.start(currentSelection) + fakePlayer.currentPosition()
             }
         } else {
             duration()
         }
     }
 
+    override fun visibleArea(): Long {
+        val view = container ?: return 0
+        return if (view.isShown) view.width.toLong() * view.height else 0
+    }
+
+    override fun setVideoEnabled(enabled: Boolean) {
+        if (!hasExoPlayer) {
+            return
+        }
+        if (trackSelector.setVideoEnabled(exoPlayer, enabled) && enabled && isInPlaybackState()) {
+            // 在当前位置重新定位，视频从最近的关键帧开始解码
+            internalSeeking = true
+            exoPlayer.seekTo(exoPlayer.currentWindowIndex, exoPlayer.currentPosition)
+            internalSeeking = false
+        }
+    }
+
+    override fun setMaxVideoBitrate(bitrate: Int) {
+        trackSelector.setParameters(trackSelector.buildUponParameters().setMaxVideoBitrate(bitrate))
+    }
+
+    override fun bufferedAheadMs(): Long {
+        if (!isInPlaybackState() || currentPhase == AtomPlayerPhase.End) {
+            return -1
+        }
+        return exoPlayer.totalBufferedDuration
+    }
+
+    override fun isBufferReady(): Boolean {
+        if (!videoPlaying) {
+            return true
+        }
+        if (!hasExoPlayer) {
+            return false
+        }
+        val state = exoPlayer.playbackState
+        return state == Player.STATE_READY || state == Player.STATE_ENDED
+    }
+
     private fun validSelection() = currentSelection >= 0 && currentSelection < videos.size
 
     override fun duration(): Long {
-        if (isInPlaybackState()) {
-            return videos.last().endTime
-        }
-        return -1
+        return videos.last().endTime
     }
 
     private fun playNext() {
         Log.d("[$name] play next called: $videoPlaying")
         if (videoPlaying) {
-            // play next fake
-            if (currentSelection + 1 < selections.size) {
-                exoPlayer.playWhenReady = false
-
+            if (currentSelection + 1 < segments.size) {
                 currentSelection += 1
                 fakePlayer.updateDuration(currentFakeDuration())
-                fakePlayer.seekTo(0)
-                fakePlayer.play()
+                updatePauseAtEndOfMediaItems()
+                preloadCurrentSelection()
+                if (currentFakeDuration() > 0) {
+                    // play next fake, the next video buffers meanwhile
+                    exoPlayer.playWhenReady = false
+                    videoPlaying = false
+                    internalSeeking = true
+                    fakePlayer.seekTo(0)
+                    internalSeeking = false
+                    fakePlayer.play()
+                } else {
+                    exoPlayer.playWhenReady = true
+                }
             } else {
-                eventHandler.obtainMessage(INTERNAL_END).sendToTarget()
+                handleInternalEvent(INTERNAL_END)
             }
         } else {
-            // play current video
-            setVideoPath(videos[currentSelection].videoURL)
+            // play current video, already positioned and buffered
+            videoPlaying = true
             exoPlayer.playWhenReady = true
         }
-        videoPlaying = !videoPlaying
     }
 
-    private fun setVideoPath(path: String) {
-        val mediaSource = createMediaSource(Uri.parse(path))
-        exoPlayer.setMediaSource(mediaSource)
+    /**
+     * 将播放器定位到当前段视频起点，使其在空白期间完成缓冲
+     */
+    private fun preloadCurrentSelection() {
+        if (exoPlayer.currentWindowIndex != currentSelection || exoPlayer.currentPosition != 0L) {
+            internalSeeking = true
+            exoPlayer.seekTo(currentSelection, 0)
+            internalSeeking = false
+        }
+    }
+
+    /**
+     * 下一段视频前有空白时，在当前视频结束处暂停；没有空白则由播放列表无缝衔接
+     */
+    private fun updatePauseAtEndOfMediaItems() {
+        val next = currentSelection + 1
+        exoPlayer.pauseAtEndOfMediaItems =
+            next < videos.size && videos[next].beginTime > segments.start(next)
+    }
+
+    private fun createPlaylist(): MediaSource {
+        val playlist = ConcatenatingMediaSource(
+            /* isAtomic= */ false,
+            /* useLazyPreparation= */ true,
+            ShuffleOrder.DefaultShuffleOrder(0),
+        )
+        videos.forEach {
+            val source = createMediaSource(Uri.parse(it.videoURL))
+            playlist.addMediaSource(ClippingMediaSource(source, 0, (it.endTime - it.beginTime) * 1000))
+        }
+        return playlist
     }
 
     private fun createMediaSource(uri: Uri): MediaSource {
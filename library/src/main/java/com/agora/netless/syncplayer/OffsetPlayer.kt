@@ -3,21 +3,86 @@ package com.agora.netless.syncplayer
 import android.view.View
 import android.view.ViewGroup
 
+/**
+ * 在播放器前插入一段空白
+ *
+ * 空白结束前 [prerollTime] 内，内部播放器预先定位至 0 并缓冲，空白结束时直接开始播放。
+ * 内部播放器支持休眠时，进度距空白结束超过 [prepareLeadTime] 时将其休眠（首次 prepare 仍需获取时长），
+ * 播放结束后同样休眠，进度接近或 seek 回其区间时重新 prepare 并定位。
+ */
 class OffsetPlayer constructor(
     private val player: AtomPlayer,
     private val offset: Long,
 ) : AbstractAtomPlayer() {
+    companion object {
+        const val DEFAULT_PREROLL_TIME = 1500L
+        const val DEFAULT_PREPARE_LEAD_TIME = 30_000L
+    }
+
     private var container: ViewGroup? = null
     private val fakePlayer = FakePlayer(offset)
     private var nextPlaying = false
 
+    /**
+     * 空白结束前预先准备内部播放器的时长，为 0 时在空白结束后才定位内部播放器
+     */
+    var prerollTime: Long = DEFAULT_PREROLL_TIME
+
+    private var prerolled = false
+
+    /**
+     * 空白结束前提前 prepare 内部播放器的时长，内部播放器不支持休眠时始终随本播放器一起 prepare
+     */
+    var prepareLeadTime: Long = DEFAULT_PREPARE_LEAD_TIME
+
+    private val lazyPrepare = (player as? AbstractAtomPlayer)?.canHibernate() == true
+
+    // 内部播放器已 prepare 且未休眠
+    private var innerPrepared = false
+
+    // 内部播放器就绪后再下发的 seek，相对内部播放器
+    private var pendingSeek = -1L
+
+    // 内部播放器休眠后 duration 不可用，使用休眠前的值
+    private var innerDuration = -1L
+
+    private val hibernateCheck = Runnable {
+        if (player.currentPhase == AtomPlayerPhase.End
+            || (!nextPlaying && fakePlayer.currentPosition() < offset - prepareLeadTime)
+        ) {
+            hibernatePlayer()
+        }
+    }
+
+    // 内部发起的定位至 0 尚未确认，确认可能晚于 seekTo 返回（如拖动时的 VideoPlayer），不对外通知
+    private var startSeekPending = false
+
+    private var transitionStartNanos = 0L
+
+    /**
+     * 最近一次空白结束至内部播放器开始播放的耗时，单位毫秒，尚未发生时为 -1
+     */
+    var transitionLatency: Long = -1
+        private set
+
+    override val innerPlayers: List<AtomPlayer> = listOf(player, fakePlayer)
+
+    override val positionInterpolator = PositionInterpolator()
+
     init {
-        fakePlayer.addPlayerListener(object : AtomPlayerListener {
+        adopt(player)
+        adopt(fakePlayer)
+
+        listenTo(fakePlayer, object : AtomPlayerListener {
             override fun onPositionChanged(atomPlayer: AtomPlayer, position: Long) {
                 if (position < offset) {
-                    notifyChanged {
-                        it.onPositionChanged(this@OffsetPlayer, position)
-                    }
+                    dispatchPositionChanged(position)
+                }
+                if (!innerPrepared && position >= offset - prepareLeadTime) {
+                    preparePlayer()
+                }
+                if (!prerolled && prerollTime > 0 && position >= offset - prerollTime) {
+                    preroll()
                 }
             }
 
@@ -47,18 +112,18 @@ class OffsetPlayer constructor(
             }
 
             override fun onSeekTo(atomPlayer: AtomPlayer, timeMs: Long) {
-                notifyChanged {
-                    it.onSeekTo(this@OffsetPlayer, timeMs)
-                }
+                dispatchSeekTo(timeMs)
                 adjustPlayer(timeMs)
             }
         })
 
-        player.addPlayerListener(object : AtomPlayerListener {
+        listenTo(player, object : AtomPlayerListener {
             override fun onPositionChanged(atomPlayer: AtomPlayer, position: Long) {
-                notifyChanged {
-                    it.onPositionChanged(this@OffsetPlayer, position + offset)
+                // 预先定位或空白期间内部播放器的进度不代表本播放器的进度
+                if (startSeekPending || !nextPlaying) {
+                    return
                 }
+                dispatchPositionChanged(position + offset)
             }
 
             override fun onPhaseChanged(atomPlayer: AtomPlayer, phaseChange: AtomPlayerPhase) {
@@ -75,6 +140,11 @@ class OffsetPlayer constructor(
                         }
                     }
                     AtomPlayerPhase.Playing -> {
+                        if (transitionStartNanos != 0L) {
+                            transitionLatency = (clock.elapsedRealtimeNanos() - transitionStartNanos) / 1_000_000
+                            transitionStartNanos = 0
+                            Log.d("[$name] transition latency $transitionLatency ms")
+                        }
                         updatePlayerPhase(AtomPlayerPhase.Playing)
                     }
                     AtomPlayerPhase.Buffering -> {
@@ -82,36 +152,95 @@ class OffsetPlayer constructor(
                     }
                     AtomPlayerPhase.End -> {
                         updatePlayerPhase(AtomPlayerPhase.End)
+                        if (lazyPrepare) {
+                            eventHandler.post(hibernateCheck)
+                        }
                     }
                 }
             }
 
             override fun onSeekTo(atomPlayer: AtomPlayer, timeMs: Long) {
-                notifyChanged {
-                    it.onSeekTo(this@OffsetPlayer, timeMs + offset)
+                if (startSeekPending) {
+                    // 之后的确认说明内部 seek 已完成或已被合并，只有落在 0 处的才是内部 seek 的确认
+                    startSeekPending = false
+                    if (timeMs == 0L) {
+                        return
+                    }
                 }
+                dispatchSeekTo(timeMs + offset)
                 adjustPlayer(timeMs + offset)
             }
         })
     }
 
     private fun checkReady() {
-        if (player.currentPhase == AtomPlayerPhase.Ready
+        if (currentPhase != AtomPlayerPhase.Idle) {
+            // 延后 prepare 的内部播放器就绪
+            if (player.currentPhase == AtomPlayerPhase.Ready && pendingSeek >= 0) {
+                val timeMs = pendingSeek
+                pendingSeek = -1
+                player.seekTo(timeMs)
+            }
+            return
+        }
+        if ((!innerPrepared || player.currentPhase == AtomPlayerPhase.Ready)
             && fakePlayer.currentPhase == AtomPlayerPhase.Ready
         ) {
-            eventHandler.obtainMessage(INTERNAL_READY).sendToTarget()
+            handleInternalEvent(INTERNAL_READY)
+            if (lazyPrepare) {
+                eventHandler.post(hibernateCheck)
+            }
         }
     }
 
+    private fun preparePlayer() {
+        if (!innerPrepared) {
+            innerPrepared = true
+            player.prepare()
+        }
+    }
+
+    private fun hibernatePlayer() {
+        if (!lazyPrepare || !innerPrepared) {
+            return
+        }
+        Log.d("[$name] hibernate ${player.name}")
+        if (player.duration() > 0) {
+            innerDuration = player.duration()
+        }
+        innerPrepared = false
+        prerolled = false
+        pendingSeek = -1
+        startSeekPending = false
+        (player as AbstractAtomPlayer).hibernate()
+    }
+
+    override fun hibernate() {
+        eventHandler.removeCallbacks(hibernateCheck)
+        if (innerPrepared && player.duration() > 0) {
+            innerDuration = player.duration()
+        }
+        innerPrepared = false
+        prerolled = false
+        pendingSeek = -1
+        startSeekPending = false
+        updateNextPlaying(false)
+        super.hibernate()
+    }
+
     override var playbackSpeed = 1.0f
         set(value) {
+            positionInterpolator.rebase(clock, field)
             field = value
             fakePlayer.playbackSpeed = value
             player.playbackSpeed = value
         }
 
     override fun prepareInternal() {
-        player.prepare()
+        // 已知内部播放器时长时才可延后 prepare
+        if (!lazyPrepare || offset <= prepareLeadTime || knownInnerDuration() <= 0) {
+            preparePlayer()
+        }
         fakePlayer.prepare()
     }
 
@@ -129,22 +258,40 @@ class OffsetPlayer constructor(
     }
 
     override fun release() {
+        eventHandler.removeCallbacks(hibernateCheck)
         player.release()
     }
 
     override fun seekToInternal(timeMs: Long) {
+        eventHandler.removeCallbacks(hibernateCheck)
+        transitionStartNanos = 0
         if (timeMs < offset) {
+            prerolled = false
+            pendingSeek = -1
+            if (timeMs < offset - prepareLeadTime) {
+                hibernatePlayer()
+            } else {
+                preparePlayer()
+            }
             fakePlayer.seekTo(timeMs)
+        } else if (lazyPrepare && player.currentPhase == AtomPlayerPhase.Idle) {
+            // 内部播放器就绪后再 seek，届时回调 onSeekTo
+            pendingSeek = timeMs - offset
+            preparePlayer()
         } else {
+            if (timeMs == offset) {
+                // 与内部 seek 目标相同，其确认即本次 seek 的确认
+                startSeekPending = false
+            }
             player.seekTo(timeMs - offset)
         }
     }
 
     private fun adjustPlayer(position: Long) {
+        updateNextPlaying(position >= offset)
         if (!isPlaying) {
             return
         }
-        updateNextPlaying(position >= offset)
         if (position >= offset) {
             fakePlayer.pause()
             player.play()
@@ -159,24 +306,62 @@ class OffsetPlayer constructor(
         container?.visibility = if (nextPlaying) View.VISIBLE else View.INVISIBLE
     }
 
+    /**
+     * 内部播放器暂停在 0 处缓冲，空白结束时无需再 seek
+     */
+    private fun preroll() {
+        if (player.currentPhase == AtomPlayerPhase.Idle) {
+            return
+        }
+        prerolled = true
+        seekPlayerToStart()
+    }
+
+    override fun isPrerolling(): Boolean {
+        return (prerolled && !nextPlaying) || super.isPrerolling()
+    }
+
     private fun playNext() {
         updateNextPlaying(true)
-        player.seekTo(0)
+        if (lazyPrepare && player.currentPhase == AtomPlayerPhase.Idle) {
+            // 内部播放器尚未就绪，就绪后从 0 开始播放
+            transitionStartNanos = clock.elapsedRealtimeNanos()
+            preparePlayer()
+            player.play()
+            updatePlayerPhase(AtomPlayerPhase.Buffering)
+            return
+        }
+        if (!prerolled) {
+            seekPlayerToStart()
+        }
+        // 内部播放器进入 Playing 时结束计时
+        transitionStartNanos = clock.elapsedRealtimeNanos()
         player.play()
     }
 
+    private fun seekPlayerToStart() {
+        startSeekPending = true
+        player.seekTo(0)
+    }
+
     override fun currentPosition(): Long {
-        if (fakePlayer.isPlaying) {
-            return fakePlayer.currentPosition()
-        }
-        if (player.isPlaying) {
-            return player.currentPosition() + offset
-        }
-        return 0
+        return interpolatedPosition()
     }
 
     override fun duration(): Long {
-        return player.duration() + fakePlayer.duration()
+        return cachedDuration()
+    }
+
+    override fun computeDuration(): Long {
+        return knownInnerDuration() + fakePlayer.duration()
+    }
+
+    private fun knownInnerDuration(): Long {
+        val duration = player.duration()
+        if (duration <= 0 && innerDuration > 0) {
+            return innerDuration
+        }
+        return duration
     }
 
     override fun setPlayerContainer(container: ViewGroup) {
@@ -0,0 +1,44 @@
+package com.agora.netless.syncplayer
+
+import android.os.SystemClock
+
+/**
+ * 播放器树共享的单调时钟
+ *
+ * 默认基于 [SystemClock.elapsedRealtimeNanos]，不受系统时间修改影响。
+ * 单元测试中可注入 [ManualPlayerClock] 获得确定的时间。
+ */
+interface PlayerClock {
+    /**
+     * 单调递增的时间，单位纳秒
+     */
+    fun elapsedRealtimeNanos(): Long
+
+    companion object {
+        @JvmField
+        val SYSTEM: PlayerClock = SystemPlayerClock
+    }
+}
+
+internal object SystemPlayerClock : PlayerClock {
+    override fun elapsedRealtimeNanos(): Long {
+        return SystemClock.elapsedRealtimeNanos()
+    }
+}
+
+/**
+ * 手动推进的时钟，用于测试
+ */
+class ManualPlayerClock @JvmOverloads constructor(
+    private var nowNanos: Long = 0,
+) : PlayerClock {
+    override fun elapsedRealtimeNanos(): Long {
+        return nowNanos
+    }
+
+    fun advance(timeMs: Long) {
+        nowNanos += timeMs * 1_000_000
+    }
+}
+
+internal fun PlayerClock.elapsedRealtimeMs(): Long = elapsedRealtimeNanos() / 1_000_000
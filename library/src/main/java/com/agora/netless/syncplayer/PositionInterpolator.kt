@@ -0,0 +1,42 @@
+package com.agora.netless.syncplayer
+
+/**
+ * 组合播放器的插值进度
+ *
+ * 以最近一次位置回调或 seek 的位置为基准，播放期间加上经过的时间乘以倍速，
+ * 可按帧率查询而无需访问内部播放器。暂停、缓冲时停在暂停前的插值位置。
+ * 倍速变化前需调用 [rebase]，已经过的时间按原倍速计入。
+ */
+internal class PositionInterpolator {
+    private var basePosition = 0L
+    private var baseNanos = 0L
+    private var playing = false
+
+    fun update(position: Long, clock: PlayerClock) {
+        basePosition = position
+        baseNanos = clock.elapsedRealtimeNanos()
+    }
+
+    fun setPlaying(playing: Boolean, clock: PlayerClock, speed: Float) {
+        if (this.playing == playing) {
+            return
+        }
+        rebase(clock, speed)
+        this.playing = playing
+    }
+
+    /**
+     * 以 [speed] 计算当前插值位置作为新的基准
+     */
+    fun rebase(clock: PlayerClock, speed: Float) {
+        update(position(clock, speed), clock)
+    }
+
+    fun position(clock: PlayerClock, speed: Float): Long {
+        if (!playing) {
+            return basePosition
+        }
+        val elapsedNanos = clock.elapsedRealtimeNanos() - baseNanos
+        return basePosition + (elapsedNanos * speed / 1_000_000).toLong()
+    }
+}
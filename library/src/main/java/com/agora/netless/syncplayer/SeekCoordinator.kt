@@ -0,0 +1,124 @@
+package com.agora.netless.syncplayer
+
+/**
+ * 组合播放器的 seek 合并
+ *
+ * 同一时刻只有一次 seek 下发到子播放器，期间新的目标只替换排队中的目标，最后一个生效。
+ * 被替换的目标不会下发到子播放器，所有子播放器确认最终目标后才回调 [onComplete]。
+ * 每次下发分配递增的 [generation]，子播放器的确认按下标记录，重复或无关的回调不影响计数。
+ * 设置 [leader] 后先只 seek 该播放器，其余播放器 seek 至它实际落定的位置。
+ * 处于 Idle 的子播放器不下发 seek。
+ */
+internal class SeekCoordinator(
+    private val players: Array<AtomPlayer>,
+    private val onComplete: (Long) -> Unit,
+) {
+    private val pending = BooleanArray(players.size)
+    private var pendingCount = 0
+
+    private var queued = false
+    private var queuedTarget = 0L
+
+    /**
+     * 当前下发的 seek 编号
+     */
+    var generation = 0
+        private set
+
+    /**
+     * 当前下发的目标位置
+     */
+    var target = 0L
+        private set
+
+    /**
+     * 下发时优先 seek 的播放器，在每次下发时读取
+     */
+    var leader: AtomPlayer? = null
+
+    // 本轮中尚未确认的 leader 下标
+    private var leading = -1
+
+    val isSeeking: Boolean
+        get() = pendingCount != 0 || queued
+
+    fun seekTo(timeMs: Long) {
+        if (pendingCount != 0) {
+            queuedTarget = timeMs
+            queued = true
+            return
+        }
+        start(timeMs)
+    }
+
+    /**
+     * 子播放器回调 onSeekTo 时调用，[timeMs] 为子播放器实际落定的位置
+     */
+    fun onSeekTo(player: AtomPlayer, timeMs: Long) {
+        val index = players.indexOf(player)
+        if (index == -1 || !pending[index]) {
+            return
+        }
+        pending[index] = false
+        pendingCount--
+        if (index == leading) {
+            leading = -1
+            if (queued) {
+                start(queuedTarget)
+            } else {
+                target = timeMs
+                issue(target, index)
+            }
+            return
+        }
+        if (pendingCount != 0) {
+            return
+        }
+        if (queued) {
+            start(queuedTarget)
+        } else {
+            onComplete(target)
+        }
+    }
+
+    private fun start(timeMs: Long) {
+        queued = false
+        generation++
+        target = timeMs
+        pending.fill(true)
+        pendingCount = players.size
+        for (i in players.indices) {
+            // 尚未就绪的子播放器不参与，就绪后由组合播放器同步位置
+            if (players[i].currentPhase == AtomPlayerPhase.Idle) {
+                pending[i] = false
+                pendingCount--
+            }
+        }
+        if (pendingCount == 0) {
+            onComplete(timeMs)
+            return
+        }
+
+        val index = players.indexOf(leader)
+        leading = if (index != -1 && pending[index] && pendingCount > 1) index else -1
+        if (leading != -1) {
+            players[leading].seekTo(timeMs)
+        } else {
+            issue(timeMs, -1)
+        }
+    }
+
+    private fun issue(timeMs: Long, skip: Int) {
+        val current = generation
+        for (i in players.indices) {
+            if (i == skip || !pending[i]) {
+                continue
+            }
+            players[i].seekTo(timeMs)
+            if (current != generation) {
+                // 子播放器同步确认期间已开始新的一轮，剩余的子播放器由新一轮下发
+                return
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.agora.netless.syncplayer
+
+/**
+ * [AbstractAtomPlayer.seekToAsync] 返回的 seek 句柄
+ *
+ * 播放器下所有叶子播放器落定且缓冲可播放后完成，超时或被取消时同样结束。
+ * 同一播放器发起新的 seekToAsync 时，之前未结束的句柄被取消。回调均在主线程。
+ */
+class SeekHandle internal constructor(
+    val timeMs: Long,
+    private val player: AbstractAtomPlayer,
+    private val listener: Listener?,
+) {
+    enum class State {
+        Pending,
+        Completed,
+        TimedOut,
+        Cancelled,
+    }
+
+    interface Listener {
+        fun onSeekFinished(handle: SeekHandle)
+    }
+
+    var state = State.Pending
+        private set
+
+    val isDone: Boolean
+        get() = state != State.Pending
+
+    internal val timeout = Runnable {
+        finish(State.TimedOut)
+    }
+
+    fun cancel() {
+        finish(State.Cancelled)
+    }
+
+    internal fun finish(state: State) {
+        if (isDone) {
+            return
+        }
+        this.state = state
+        player.removeSeekHandle(this)
+        listener?.onSeekFinished(this)
+    }
+}
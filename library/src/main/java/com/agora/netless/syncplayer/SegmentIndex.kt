@@ -0,0 +1,121 @@
+package com.agora.netless.syncplayer
+
+/**
+ * 不可变的分段时间索引
+ *
+ * 内部时间为各段在原播放器中的区间 [start, end)，外部时间为各段首尾相接后的时间轴。
+ * 分段以 LongArray 存储，查找使用二分。调用方可传入上次命中的分段作为 hint，顺序播放时为 O(1)。
+ * 分段需按时间升序且互不重叠。实例不可变、不保存查找状态，可在多个播放器与线程间共享。
+ */
+internal class SegmentIndex(
+    private val starts: LongArray,
+    private val ends: LongArray,
+) {
+    private val outerStarts = LongArray(starts.size)
+    private val outerEnds = LongArray(starts.size)
+
+    init {
+        if (starts.isEmpty() || starts.size != ends.size) {
+            throw IllegalArgumentException("segments should not be empty!")
+        }
+        var start = 0L
+        for (i in starts.indices) {
+            outerStarts[i] = start
+            start += ends[i] - starts[i]
+            outerEnds[i] = start
+        }
+    }
+
+    val size: Int
+        get() = starts.size
+
+    /**
+     * 外部时间轴总时长
+     */
+    val duration: Long
+        get() = outerEnd(size - 1)
+
+    fun start(index: Int): Long = starts[index]
+
+    fun end(index: Int): Long = ends[index]
+
+    fun outerStart(index: Int): Long = outerStarts[index]
+
+    fun outerEnd(index: Int): Long = outerEnds[index]
+
+    /**
+     * 内部时间所在的分段，即第一个满足 position < end 的分段，不存在时返回 -1
+     *
+     * @param hint 调用方上次命中的分段，先检查它与下一个分段，为 -1 时直接二分
+     */
+    fun indexOf(position: Long, hint: Int = -1): Int {
+        return find(position, ends, hint)
+    }
+
+    /**
+     * 外部时间所在的分段，不存在时返回 -1
+     */
+    fun indexOfOuter(position: Long, hint: Int = -1): Int {
+        return find(position, outerEnds, hint)
+    }
+
+    fun innerToOuter(position: Long, hint: Int = -1): Long {
+        if (position < starts[0]) {
+            return 0
+        }
+        val index = indexOf(position, hint)
+        if (index != -1) {
+            return outerStarts[index] + (position - starts[index])
+        }
+        return position
+    }
+
+    fun outerToInner(position: Long, hint: Int = -1): Long {
+        val index = indexOfOuter(position, hint)
+        if (index != -1) {
+            return starts[index] + (position - outerStarts[index])
+        }
+        return position
+    }
+
+    /**
+     * 查找第一个满足 position < ends[i] 的分段
+     */
+    private fun find(position: Long, ends: LongArray, hint: Int): Int {
+        if (hint >= 0 && hint < ends.size) {
+            if (matches(position, ends, hint)) {
+                return hint
+            }
+            if (hint + 1 < ends.size && matches(position, ends, hint + 1)) {
+                return hint + 1
+            }
+        }
+
+        var low = 0
+        var high = ends.size - 1
+        var result = -1
+        while (low <= high) {
+            val mid = (low + high) ushr 1
+            if (position < ends[mid]) {
+                result = mid
+                high = mid - 1
+            } else {
+                low = mid + 1
+            }
+        }
+        return result
+    }
+
+    private fun matches(position: Long, ends: LongArray, index: Int): Boolean {
+        return position < ends[index] && (index == 0 || position >= ends[index - 1])
+    }
+
+    companion object {
+        fun of(selections: List<Selection>): SegmentIndex {
+            return SegmentIndex(
+                LongArray(selections.size) { selections[it].start },
+                LongArray(selections.size) { selections[it].end },
+            )
+        }
+    }
+}
@@ -4,35 +4,39 @@ import android.view.ViewGroup
 
 /**
  * 选取一个播放器的多段
+ *
+ * 默认依据位置回调在分段结束时 seek 至下一段。内部播放器为 [VideoPlayer] 且开启
+ * [SelectionOptions.frameAccurate] 时，分段直接裁剪拼接为播放列表，在精确的帧上切换，无需 seek。
  */
 class SelectionPlayer(
     private val atomPlayer: AtomPlayer,
     selectionOptions: SelectionOptions,
 ) : AbstractAtomPlayer() {
-    // 内部播放器使用参数
-    private val segInter: List<Selection> = selectionOptions.selections
-
-    // 外部表现参数
-    private val segOuter: List<Selection>
+    // 内部播放器分段与外部表现时间的映射
+    private val segments = SegmentIndex.of(selectionOptions.selections)
 
     // 正在播放的段
     private var currentSelection = 0
 
-    init {
-        var start = 0L
-        val segOutTmp = ArrayList<Selection>(segInter.size)
-        for (selection in segInter) {
-            segOutTmp.add(Selection(start, start + selection.duration()))
-            start += selection.duration()
-        }
-        segOuter = segOutTmp
+    override val innerPlayers: List<AtomPlayer> = listOf(atomPlayer)
+
+    override val positionInterpolator = PositionInterpolator()
+
+    // 内部播放器已按分段裁剪，时间与外部一致
+    private val clipped = selectionOptions.frameAccurate
+            && atomPlayer is VideoPlayer
+            && atomPlayer.clipTo(segments)
 
-        atomPlayer.addPlayerListener(object : AtomPlayerListener {
+    init {
+        adopt(atomPlayer)
+        listenTo(atomPlayer, object : AtomPlayerListener {
             override fun onSeekTo(atomPlayer: AtomPlayer, timeMs: Long) {
-                currentSelection = segInter.indexOfFirst { timeMs < it.end }
-                notifyChanged {
-                    it.onSeekTo(this@SelectionPlayer, getOutFromIn(timeMs))
+                currentSelection = if (clipped) {
+                    segments.indexOfOuter(timeMs, currentSelection)
+                } else {
+                    segments.indexOf(timeMs, currentSelection)
                 }
+                dispatchSeekTo(getOutFromIn(timeMs))
             }
 
             override fun onPhaseChanged(atomPlayer: AtomPlayer, phaseChange: AtomPlayerPhase) {
@@ -42,38 +46,42 @@ class SelectionPlayer(
                     }
                     AtomPlayerPhase.Ready -> {
                         currentSelection = 0
-                        atomPlayer.seekTo(segInter[0].start)
-                        eventHandler.obtainMessage(INTERNAL_READY).sendToTarget()
+                        if (!clipped) {
+                            atomPlayer.seekTo(segments.start(0))
+                        }
+                        handleInternalEvent(INTERNAL_READY)
                     }
                     AtomPlayerPhase.Paused -> {
-                        eventHandler.obtainMessage(INTERNAL_PAUSED).sendToTarget()
+                        handleInternalEvent(INTERNAL_PAUSED)
                     }
                     AtomPlayerPhase.Playing -> {
-                        eventHandler.obtainMessage(INTERNAL_PLAYING).sendToTarget()
+                        handleInternalEvent(INTERNAL_PLAYING)
                     }
                     AtomPlayerPhase.Buffering -> {
-                        eventHandler.obtainMessage(INTERNAL_BUFFERING).sendToTarget()
+                        handleInternalEvent(INTERNAL_BUFFERING)
                     }
                     AtomPlayerPhase.End -> {
-                        eventHandler.obtainMessage(INTERNAL_END).sendToTarget()
+                        handleInternalEvent(INTERNAL_END)
                     }
                 }
             }
 
             override fun onPositionChanged(atomPlayer: AtomPlayer, position: Long) {
+                if (clipped) {
+                    dispatchPositionChanged(position)
+                    return
+                }
                 if (checkEnd(position)) {
                     pauseInternal()
                     updatePlayerPhase(AtomPlayerPhase.End)
                     return
                 }
-                val index = segInter.indexOfFirst { position < it.end }
+                val index = segments.indexOf(position, currentSelection)
                 if (index == currentSelection + 1) {
-                    atomPlayer.seekTo(segInter[index].start)
+                    atomPlayer.seekTo(segments.start(index))
                 } else {
                     // continue playing
-                    notifyChanged {
-                        it.onPositionChanged(this@SelectionPlayer, getOutFromIn(position))
-                    }
+                    dispatchPositionChanged(getOutFromIn(position))
                 }
             }
         })
@@ -81,6 +89,7 @@ class SelectionPlayer(
 
     override var playbackSpeed = 1.0f
         set(value) {
+            positionInterpolator.rebase(clock, field)
             field = value
             atomPlayer.playbackSpeed = value
         }
@@ -107,39 +116,21 @@ class SelectionPlayer(
     }
 
     private fun getInFromOut(timeMs: Long): Long {
-        val first = segOuter.indexOfFirst { timeMs < it.end }
-        if (first != -1) {
-            return segInter[first].start + (timeMs - segOuter[first].start)
-        }
-        return timeMs
+        return if (clipped) timeMs else segments.outerToInner(timeMs, currentSelection)
     }
 
     private fun getOutFromIn(inPosition: Long): Long {
-        if (inPosition < segInter[0].start) {
-            return 0
-        }
-        val first = segInter.indexOfFirst { inPosition < it.end }
-        if (first != -1) {
-            return segOuter[first].start + (inPosition - segInter[first].start)
-        }
-        return inPosition
+        return if (clipped) inPosition else segments.innerToOuter(inPosition, currentSelection)
     }
 
-    private fun checkEnd(inPosition: Long) = inPosition > segInter.last().end
+    private fun checkEnd(inPosition: Long) = inPosition > segments.end(segments.size - 1)
 
     override fun currentPosition(): Long {
-        if (isInPlaybackState()) {
-            val inPosition = atomPlayer.currentPosition()
-            return getOutFromIn(inPosition)
-        }
-        return 0
+        return interpolatedPosition()
     }
 
     override fun duration(): Long {
-        if (isInPlaybackState()) {
-            return segOuter.last().end
-        }
-        return -1
+        return segments.duration
     }
 
     override fun setPlayerContainer(container: ViewGroup) {
@@ -147,7 +138,13 @@ class SelectionPlayer(
     }
 }
 
-data class SelectionOptions(val selections: List<Selection>)
+/**
+ * @param frameAccurate 内部播放器为 [VideoPlayer] 时，按分段裁剪拼接媒体源，在精确的帧上切换分段
+ */
+data class SelectionOptions @JvmOverloads constructor(
+    val selections: List<Selection>,
+    val frameAccurate: Boolean = false,
+)
 
 data class Selection(val start: Long, val end: Long) {
     fun duration(): Long {
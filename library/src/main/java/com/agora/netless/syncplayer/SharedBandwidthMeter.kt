@@ -0,0 +1,81 @@
+package com.agora.netless.syncplayer
+
+import android.content.Context
+import android.os.Handler
+import android.os.Looper
+import android.os.SystemClock
+import com.google.android.exoplayer2.upstream.DefaultBandwidthMeter
+
+/**
+ * 所有视频播放器共享的带宽估计
+ *
+ * 多个播放器同时加载时由同一个 meter 统计，估计值代表整条链路。估计值持久化，
+ * 下次启动时作为初始估计，首个分段即可选择合适的码率。每个分段都会产生新的估计，
+ * 只在与已保存的值相差超过 [PERSIST_CHANGE_RATIO] 且距上次写入超过 [PERSIST_INTERVAL] 毫秒时写入。
+ */
+internal object SharedBandwidthMeter {
+    private const val PREFS_NAME = "sync-player"
+    private const val KEY_BITRATE_ESTIMATE = "bitrate_estimate"
+
+    private const val PERSIST_CHANGE_RATIO = 0.2
+    private const val PERSIST_INTERVAL = 10_000L
+
+    private var persistedEstimate = 0L
+    private var lastPersistMs = 0L
+
+    private var meter: DefaultBandwidthMeter? = null
+
+    private val listeners = ArrayList<(Long) -> Unit>()
+
+    @Synchronized
+    fun get(context: Context): DefaultBandwidthMeter {
+        meter?.let { return it }
+
+        val prefs = context.applicationContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+        val builder = DefaultBandwidthMeter.Builder(context.applicationContext)
+        val persisted = prefs.getLong(KEY_BITRATE_ESTIMATE, 0)
+        if (persisted > 0) {
+            builder.setInitialBitrateEstimate(persisted)
+        }
+        persistedEstimate = persisted
+        return builder.build().also {
+            it.addEventListener(Handler(Looper.getMainLooper())) { _, _, bitrateEstimate ->
+                if (shouldPersist(bitrateEstimate)) {
+                    prefs.edit().putLong(KEY_BITRATE_ESTIMATE, bitrateEstimate).apply()
+                }
+                listeners.toList().forEach { listener ->
+                    listener(bitrateEstimate)
+                }
+            }
+            meter = it
+        }
+    }
+
+    private fun shouldPersist(bitrateEstimate: Long): Boolean {
+        val now = SystemClock.elapsedRealtime()
+        val changed = persistedEstimate <= 0
+            || Math.abs(bitrateEstimate - persistedEstimate) > persistedEstimate * PERSIST_CHANGE_RATIO
+        if (!changed || (lastPersistMs != 0L && now - lastPersistMs < PERSIST_INTERVAL)) {
+            return false
+        }
+        persistedEstimate = bitrateEstimate
+        lastPersistMs = now
+        return true
+    }
+
+    /**
+     * 当前带宽估计，单位 bps，尚未创建时为 0
+     */
+    fun bitrateEstimate(): Long = meter?.bitrateEstimate ?: 0
+
+    /**
+     * 在主线程回调新的带宽估计，单位 bps
+     */
+    fun addListener(listener: (Long) -> Unit) {
+        listeners += listener
+    }
+
+    fun removeListener(listener: (Long) -> Unit) {
+        listeners -= listener
+    }
+}
@@ -0,0 +1,271 @@
+package com.agora.netless.syncplayer
+
+/**
+ * 同步播放任意数量的播放器
+ *
+ * 与 [ClusterPlayer] 的两两组合不同，SyncGroup 直接持有所有子播放器，
+ * 状态、进度与 seek 完成只在这一层汇总，避免多层嵌套带来的回调延迟。
+ * [ClusterPlayer] 即两个子播放器的 SyncGroup。
+ */
+open class SyncGroup constructor(
+    players: List<AtomPlayer>,
+) : AbstractAtomPlayer() {
+    companion object {
+        const val POSITION_SYNC_INTERVAL = 1000
+    }
+
+    private val players: Array<AtomPlayer> = players.toTypedArray()
+    private val pauseReason = BooleanArray(this.players.size)
+    private val required = BooleanArray(this.players.size) { true }
+
+    // 晚加入的非必需子播放器，join seek 完成前不参与整组缓冲
+    private val joining = BooleanArray(this.players.size)
+
+    private var position: Long = 0
+
+    override val innerPlayers: List<AtomPlayer> = players.toList()
+
+    override val positionInterpolator = PositionInterpolator()
+
+    private val seekCoordinator = SeekCoordinator(this.players) {
+        position = it
+        dispatchSeekTo(it)
+    }
+
+    private val groupBuffering = GroupBuffering(this, this.players, pauseReason, joining)
+
+    init {
+        if (this.players.isEmpty()) {
+            throw IllegalArgumentException("players should not be empty!")
+        }
+        val atomPlayerListener = LocalAtomPlayerListener()
+        this.players.forEach {
+            adopt(it)
+            listenTo(it, atomPlayerListener)
+        }
+    }
+
+    constructor(vararg players: AtomPlayer) : this(players.toList())
+
+    private fun index(player: AtomPlayer) = players.indexOf(player)
+
+    /**
+     * 起播所需的子播放器，全部 Ready 后整组即开始播放，默认为所有子播放器
+     *
+     * 其余子播放器就绪后 seek 至整组当前进度再加入播放。
+     */
+    var requiredPlayers: Set<AtomPlayer>
+        get() = players.filterIndexed { i, _ -> required[i] }.toSet()
+        set(value) {
+            if (value.isEmpty() || !players.toSet().containsAll(value)) {
+                throw IllegalArgumentException("required players should be a non-empty subset of the players!")
+            }
+            players.forEachIndexed { i, it -> required[i] = it in value }
+        }
+
+    private fun requiredReady() = players.indices.all { !required[it] || players[it].currentPhase == AtomPlayerPhase.Ready }
+
+    private fun allEnded() = players.indices.all {
+        players[it].currentPhase == AtomPlayerPhase.End
+            || (!required[it] && players[it].currentPhase == AtomPlayerPhase.Idle)
+    }
+
+    /**
+     * 晚于整组就绪的子播放器，按正在播放的子播放器的实时进度对齐
+     *
+     * 非必需的子播放器在 seek 完成前不参与整组缓冲，避免加入时的缓冲使整组卡顿。
+     */
+    private fun joinLate(player: AtomPlayer) {
+        var target = position
+        players.forEach {
+            if (it != player && it.isPlaying) {
+                target = maxOf(target, it.currentPosition())
+            }
+        }
+        Log.d("[$name] ${player.name} joins late at $target")
+        val i = index(player)
+        joining[i] = !required[i]
+        player.seekTo(target)
+    }
+
+    /**
+     * 子播放器进度偏差修正，可调整容差与 seek 阈值
+     */
+    val driftController = DriftController(seekThreshold = POSITION_SYNC_INTERVAL.toLong())
+
+    /**
+     * 子播放器相对同组其他播放器的实时偏差，正值表示落后
+     */
+    fun skewOf(player: AtomPlayer): Long = driftController.skewOf(player)
+
+    /**
+     * 主播放器，拖动时先 seek 主播放器，其余播放器对齐到它落定的关键帧
+     */
+    var primaryPlayer: AtomPlayer? = null
+        set(value) {
+            if (value != null && value !in players) {
+                throw IllegalArgumentException("primary player should be one of the players!")
+            }
+            field = value
+        }
+
+    /**
+     * 子播放器缓冲时整组暂停与恢复的策略
+     */
+    var bufferingPolicy: BufferingPolicy
+        get() = groupBuffering.policy
+        set(value) {
+            groupBuffering.policy = value
+        }
+
+    /**
+     * 整组因缓冲暂停的次数
+     */
+    val stallCount: Int
+        get() = groupBuffering.stallCount
+
+    /**
+     * 整组因缓冲暂停的累计时长，单位毫秒
+     */
+    val stalledTimeMs: Long
+        get() = groupBuffering.stalledTimeMs
+
+    override var playbackSpeed = 1.0f
+        set(value) {
+            positionInterpolator.rebase(clock, field)
+            field = value
+            driftController.reset(players, value)
+            players.forEach {
+                it.playbackSpeed = value
+            }
+        }
+
+    override fun prepareInternal() {
+        players.forEach {
+            it.prepare()
+        }
+    }
+
+    override fun playInternal() {
+        groupBuffering.reset()
+        players.forEach {
+            it.play()
+        }
+    }
+
+    override fun pauseInternal() {
+        groupBuffering.reset()
+        driftController.reset(players, playbackSpeed)
+        players.forEach {
+            it.pause()
+        }
+    }
+
+    override fun release() {
+        players.forEach {
+            it.release()
+        }
+    }
+
+    /**
+     * 所有子播放器同时 seek，全部回调 onSeekTo 后才对外通知一次
+     * 上一次 seek 未完成时只保留最新的目标，完成后再下发
+     * 拖动时若设置了 [primaryPlayer]，整体目标对齐到主播放器落定的位置
+     */
+    override fun seekToInternal(timeMs: Long) {
+        driftController.reset(players, playbackSpeed)
+        seekCoordinator.leader = if (scrubbing) primaryPlayer else null
+        seekCoordinator.seekTo(timeMs)
+    }
+
+    private fun isSeeking(): Boolean {
+        return seekCoordinator.isSeeking
+    }
+
+    override fun currentPosition(): Long {
+        return interpolatedPosition()
+    }
+
+    override fun duration(): Long {
+        return cachedDuration()
+    }
+
+    override fun computeDuration(): Long {
+        return players.maxOf { it.duration() }
+    }
+
+    inner class LocalAtomPlayerListener : AtomPlayerListener {
+        override fun onPositionChanged(atomPlayer: AtomPlayer, position: Long) {
+            if (!isSeeking()) {
+                if (this@SyncGroup.position < position) {
+                    this@SyncGroup.position = position
+                    dispatchPositionChanged(this@SyncGroup.position)
+                }
+                if (isPlaying) {
+                    driftController.correct(atomPlayer, players, playbackSpeed)
+                }
+            }
+        }
+
+        override fun onPhaseChanged(atomPlayer: AtomPlayer, phaseChange: AtomPlayerPhase) {
+            Log.d("[$name] onPhaseChanged ${atomPlayer.name} $phaseChange")
+
+            when (phaseChange) {
+                AtomPlayerPhase.Idle -> {
+                    joining[index(atomPlayer)] = false
+                }
+                AtomPlayerPhase.Ready -> {
+                    if (currentPhase != AtomPlayerPhase.Idle) {
+                        joinLate(atomPlayer)
+                    } else if (requiredReady()) {
+                        handleInternalEvent(INTERNAL_READY)
+                    }
+                }
+                AtomPlayerPhase.Paused -> {
+                    if (pauseReason[index(atomPlayer)]) {
+                        return
+                    }
+                    players.forEach {
+                        if (it != atomPlayer && it.isPlaying) {
+                            it.pause()
+                        }
+                    }
+                    updatePlayerPhase(AtomPlayerPhase.Paused)
+                }
+                AtomPlayerPhase.Playing -> {
+                    if (!groupBuffering.onPlaying(atomPlayer)) {
+                        return
+                    }
+                    players.forEachIndexed { i, it ->
+                        if (it != atomPlayer && !it.isPlaying && it.currentPhase != AtomPlayerPhase.Buffering) {
+                            pauseReason[i] = false
+                            it.play()
+                        }
+                    }
+                    updatePlayerPhase(AtomPlayerPhase.Playing)
+                }
+                AtomPlayerPhase.Buffering -> {
+                    groupBuffering.onBuffering(atomPlayer)
+                }
+                AtomPlayerPhase.End -> {
+                    if (allEnded()) {
+                        handleInternalEvent(INTERNAL_END)
+                    }
+                }
+            }
+        }
+
+        override fun onSeekTo(atomPlayer: AtomPlayer, timeMs: Long) {
+            Log.d("[$name] onSeekTo ${atomPlayer.name} $timeMs")
+
+            val i = index(atomPlayer)
+            if (joining[i]) {
+                joining[i] = false
+                if (atomPlayer.currentPhase == AtomPlayerPhase.Buffering) {
+                    groupBuffering.onBuffering(atomPlayer)
+                }
+            }
+            seekCoordinator.onSeekTo(atomPlayer, timeMs)
+        }
+    }
+}
@@ -19,21 +19,18 @@ class SyncPlayer {
             return SelectionPlayer(atomPlayer, selectionOptions)
         }
 
+        /**
+         * 将多个播放器组合为一个 [SyncGroup]，所有播放器在同一层同步
+         */
         @JvmStatic
         fun combine(vararg atomPlayers: AtomPlayer): AtomPlayer {
             if (atomPlayers.isEmpty()) {
                 throw RuntimeException("atomPlayers should not be empty!")
             }
-            val size = atomPlayers.size
-            if (size == 1) {
+            if (atomPlayers.size == 1) {
                 return atomPlayers[0]
-            } else if (size == 2) {
-                return ClusterPlayer(atomPlayers[0], atomPlayers[1])
             }
-            val middle = size / 2
-            val partOne = combine(*atomPlayers.slice(0 until middle).toTypedArray())
-            val partTwo = combine(*atomPlayers.slice(middle until size).toTypedArray())
-            return combine(partOne, partTwo)
+            return SyncGroup(atomPlayers.toList())
         }
     }
 }
\ No newline at end of file
@@ -1,89 +1,137 @@
 package com.agora.netless.syncplayer
 
-import android.os.Handler
 import android.text.TextUtils
 import android.util.Log
+import android.view.Choreographer
 import com.herewhite.sdk.PlayerListener
 import com.herewhite.sdk.domain.PlayerPhase
 import com.herewhite.sdk.domain.PlayerState
 import com.herewhite.sdk.domain.SDKError
+import kotlin.math.ceil
 
 /**
  * used for notify position.
+ *
+ * 每个根播放器持有一个，跟随 Choreographer 帧回调按 [rate] 采样整棵播放器树，
+ * 没有播放中的叶子播放器时自动停止。
  */
-internal class PositionNotifier constructor(
-    val handler: Handler,
-    val atomPlayer: AbstractAtomPlayer,
-    val intervalTime: Long = 500,
-) {
-    private val ticker = object : Runnable {
-        override fun run() {
-            if (atomPlayer.isPlaying) {
-                atomPlayer.notifyChanged {
-                    it.onPositionChanged(
-                        atomPlayer,
-                        atomPlayer.currentPosition()
-                    )
-                }
-                handler.postDelayed(this, intervalTime)
-            }
-        }
+internal class FrameTicker constructor(
+    private val owner: AbstractAtomPlayer,
+) : Choreographer.FrameCallback {
+    companion object {
+        const val MIN_RATE = 1
+        const val MAX_RATE = 60
+        const val DEFAULT_RATE = 10
+
+        /**
+         * 允许半帧误差，避免 60Hz 时因帧间隔抖动跳过采样
+         */
+        private const val FRAME_SLACK_NANOS = 8_000_000L
     }
 
+    var rate = DEFAULT_RATE
+
+    private var running = false
+    private var lastTickNanos = 0L
+    private val choreographer by lazy { Choreographer.getInstance() }
+
     fun start() {
-        handler.post(ticker)
+        if (!running) {
+            running = true
+            lastTickNanos = 0
+            choreographer.postFrameCallback(this)
+        }
     }
 
     fun stop() {
-        handler.removeCallbacks(ticker)
+        if (running) {
+            running = false
+            choreographer.removeFrameCallback(this)
+        }
+    }
+
+    override fun doFrame(frameTimeNanos: Long) {
+        if (!running) {
+            return
+        }
+        if (owner.parentPlayer != null) {
+            // 已被组合为子播放器，交由新的根播放器驱动
+            running = false
+            owner.root().requestPositionTicks()
+            return
+        }
+        if (frameTimeNanos - lastTickNanos < 1_000_000_000L / rate - FRAME_SLACK_NANOS) {
+            choreographer.postFrameCallback(this)
+            return
+        }
+        lastTickNanos = frameTimeNanos
+        if (owner.dispatchPositionTick()) {
+            choreographer.postFrameCallback(this)
+        } else {
+            running = false
+        }
     }
 }
 
 /**
  * 模拟空白播放，实现AtomPlayer
+ *
+ * 依据剩余时长与倍速精确安排结束时间，倍速、暂停或 seek 变化时重新安排。
  */
 internal class FakePlayer(private var duration: Long) : AbstractAtomPlayer() {
     private var startPosition = 0L
-    private var lastPlay = 0L
-
-    private val positionNotifier = PositionNotifier(eventHandler, this)
+    private var lastPlayNanos = 0L
 
-    init {
-        addPlayerListener(object : AtomPlayerListener {
-            override fun onPositionChanged(atomPlayer: AtomPlayer, position: Long) {
-                if (position >= duration) {
-                    pauseInternal()
-                    updatePlayerPhase(AtomPlayerPhase.End)
-                }
-            }
-        })
-    }
+    private val endChecker = Runnable { checkEnd() }
 
     override var playbackSpeed = 1.0f
+        set(value) {
+            rebase()
+            field = value
+            scheduleEnd()
+        }
 
     override fun prepareInternal() {
         updatePlayerPhase(AtomPlayerPhase.Ready)
     }
 
     override fun playInternal() {
-        lastPlay = System.currentTimeMillis()
-        positionNotifier.start()
+        rebase()
+        lastPlayNanos = clock.elapsedRealtimeNanos()
+        startPositionTicks()
+        scheduleEnd(force = true)
     }
 
     override fun pauseInternal() {
-        startPosition += duringTime()
-        positionNotifier.stop()
+        rebase()
+        stopPositionTicks()
+        eventHandler.removeCallbacks(endChecker)
     }
 
     override fun release() {
-        positionNotifier.stop()
+        stopPositionTicks()
+        eventHandler.removeCallbacks(endChecker)
+    }
+
+    override fun canHibernate(): Boolean = true
+
+    override fun hibernate() {
+        pauseInternal()
+        startPosition = 0
+        super.hibernate()
     }
 
     override fun seekToInternal(timeMs: Long) {
         startPosition = timeMs
-        lastPlay = System.currentTimeMillis()
-        notifyChanged {
-            it.onSeekTo(this, timeMs)
+        lastPlayNanos = clock.elapsedRealtimeNanos()
+        scheduleEnd()
+        dispatchSeekTo(timeMs)
+    }
+
+    override fun onPositionTick() {
+        checkEnd()
+        if (isPlaying) {
+            super.onPositionTick()
         }
     }
 
@@ -99,10 +147,51 @@ internal class FakePlayer(private var duration: Long) : AbstractAtomPlayer() {
         return duration
     }
 
-    private fun duringTime() = ((System.currentTimeMillis() - lastPlay) * playbackSpeed).toLong()
+    private fun duringTime() =
+        ((clock.elapsedRealtimeNanos() - lastPlayNanos) * playbackSpeed / 1_000_000).toLong()
+
+    /**
+     * 将已播放时长计入起始位置，用于倍速或播放状态变化前
+     */
+    private fun rebase() {
+        if (isPlaying) {
+            startPosition += duringTime()
+            lastPlayNanos = clock.elapsedRealtimeNanos()
+        }
+    }
+
+    /**
+     * 按剩余时长与倍速安排结束检查
+     *
+     * @param force playInternal 早于状态切换为 Playing，此时仍需安排
+     */
+    private fun scheduleEnd(force: Boolean = false) {
+        eventHandler.removeCallbacks(endChecker)
+        if ((!isPlaying && !force) || playbackSpeed <= 0) {
+            return
+        }
+        val remaining = duration - (if (force) startPosition else currentPosition())
+        val delay = ceil(remaining / playbackSpeed).toLong()
+        eventHandler.postDelayed(endChecker, delay.coerceAtLeast(0))
+    }
+
+    private fun checkEnd() {
+        if (!isPlaying) {
+            return
+        }
+        if (currentPosition() >= duration) {
+            pauseInternal()
+            startPosition = duration
+            updatePlayerPhase(AtomPlayerPhase.End)
+        } else {
+            scheduleEnd()
+        }
+    }
 
     fun updateDuration(duration: Long) {
         this.duration = duration
+        invalidateDuration()
+        scheduleEnd()
     }
 }
 
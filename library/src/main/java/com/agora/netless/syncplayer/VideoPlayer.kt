@@ -8,29 +8,91 @@ import android.widget.FrameLayout
 import com.agora.netless.syncplayer.ui.VideoPlayerView
 import com.google.android.exoplayer2.*
 import com.google.android.exoplayer2.audio.AudioAttributes
+import com.google.android.exoplayer2.source.ClippingMediaSource
+import com.google.android.exoplayer2.source.ConcatenatingMediaSource
 import com.google.android.exoplayer2.source.MediaSource
 import com.google.android.exoplayer2.source.ProgressiveMediaSource
+import com.google.android.exoplayer2.source.ShuffleOrder
 import com.google.android.exoplayer2.source.hls.HlsMediaSource
-import com.google.android.exoplayer2.upstream.DefaultDataSourceFactory
+import com.google.android.exoplayer2.trackselection.DefaultTrackSelector
 import com.google.android.exoplayer2.util.Util
+import java.util.concurrent.Future
 
 open class VideoPlayer constructor(
     private val context: Context,
     private val videoUrl: String,
 ) : AbstractAtomPlayer() {
-    private var exoPlayer = SimpleExoPlayer.Builder(context.applicationContext).build()
+    override val loadControl = BufferLoadControl(BufferProfile.PRIMARY)
 
-    private var dataSourceFactory = DefaultDataSourceFactory(
-        context,
-        Util.getUserAgent(context, "SyncPlayer")
-    )
+    /**
+     * 缓冲配置，回退缓冲时长在创建时确定，其余在播放中修改即时生效
+     */
+    var bufferProfile: BufferProfile
+        get() = loadControl.profile
+        set(value) {
+            loadControl.profile = value
+            root().rebalanceBuffers()
+        }
+
+    private var trackSelector = DefaultTrackSelector(context.applicationContext)
+
+    /**
+     * prepare 时从 [ExoPlayerPool] 借出，休眠或 release 时归还
+     */
+    private lateinit var exoPlayer: SimpleExoPlayer
+
+    private lateinit var pooledPlayer: PooledExoPlayer
+
+    private var hasExoPlayer = false
+
+    // 绑定容器或 prepare 时池中没有空闲播放器，在后台创建的播放器
+    private var pendingBuild: Future<PooledExoPlayer>? = null
+
+    // prepare 等待后台创建完成
+    private var buildAwaited = false
+
+    private var buildStartNanos = 0L
+
+    private val buildCallback = Runnable { onBuilt() }
+
+    /**
+     * 最近一次 prepare 至取得 ExoPlayer 的耗时，单位毫秒，期间不阻塞主线程，
+     * 池中有空闲播放器或后台已创建完成时接近 0，尚未创建时为 -1
+     */
+    var playerBuildTime: Long = -1
+        private set
+
+    private var container: ViewGroup? = null
+
+    // 容器尺寸变化时更新码率，更换容器时从旧容器移除
+    private val layoutListener = View.OnLayoutChangeListener { _, _, _, _, _, _, _, _, _ ->
+        root().bitratePolicy?.update()
+    }
+
+    private var playerView: View? = null
 
-    private val positionNotifier = PositionNotifier(eventHandler, this)
+    private var dataSourceFactory = MediaCache.dataSourceFactory(context)
+
+    /**
+     * 裁剪的分段，设置后只播放这些分段，对外表现为首尾相接的连续时间
+     */
+    private var clips: SegmentIndex? = null
+
+    /**
+     * 拖动期间的 seek 定位到关键帧，落点在 seek 处理完成后才确定
+     */
+    private var scrubSeeking = false
+
+    /**
+     * 恢复视频解码时内部发起的 seek，不对外通知
+     */
+    private var internalSeeking = false
 
     private val interPlayerListener = object : Player.Listener {
         override fun onPlaybackStateChanged(state: Int) {
             Log.d("[$name] interPlayer onPlaybackStateChanged $state")
 
+            notifySeekProgress()
             when (state) {
                 Player.STATE_IDLE -> {
                     updatePlayerPhase(AtomPlayerPhase.Idle)
@@ -55,6 +117,14 @@ open class VideoPlayer constructor(
             }
         }
 
+        override fun onTimelineChanged(timeline: Timeline, reason: Int) {
+            invalidateDuration()
+        }
+
+        override fun onRenderedFirstFrame() {
+            markFirstFrame()
+        }
+
         override fun onPlayerError(error: ExoPlaybackException) {
             eventHandler.obtainMessage(INTERNAL_ERROR, error).sendToTarget()
         }
@@ -62,9 +132,9 @@ open class VideoPlayer constructor(
         override fun onIsPlayingChanged(isPlaying: Boolean) {
             Log.d("[$name] exoPlayer onIsPlayingChanged $isPlaying")
             if (isPlaying) {
-                positionNotifier.start()
+                startPositionTicks()
             } else {
-                positionNotifier.stop()
+                stopPositionTicks()
             }
         }
 
@@ -73,22 +143,121 @@ open class VideoPlayer constructor(
             newPosition: Player.PositionInfo,
             reason: Int
         ) {
-            if (reason == Player.DISCONTINUITY_REASON_SEEK) {
+            if (reason == Player.DISCONTINUITY_REASON_SEEK && !scrubSeeking && !internalSeeking) {
                 Log.d("[$name] interPlayer onSeekEnd: ${exoPlayer.currentPosition}")
-                val pos = exoPlayer.currentPosition
-                notifyChanged {
-                    it.onSeekTo(this@VideoPlayer, pos)
-                    it.onPositionChanged(this@VideoPlayer, pos)
-                }
+                val pos = currentPosition()
+                dispatchSeekTo(pos)
+                dispatchPositionChanged(pos)
+            }
+        }
+
+        @Suppress("DEPRECATION")
+        override fun onSeekProcessed() {
+            if (scrubSeeking) {
+                scrubSeeking = false
+                Log.d("[$name] interPlayer onSeekProcessed: ${exoPlayer.currentPosition}")
+                val pos = currentPosition()
+                dispatchSeekTo(pos)
+                dispatchPositionChanged(pos)
             }
         }
     }
 
     init {
+        rebalanceBuffers()
+    }
+
+    private fun buildAsync() {
+        if (!hasExoPlayer && pendingBuild == null && ExoPlayerPool.idleCount() == 0) {
+            pendingBuild = ExoPlayerFactory.buildAsync(context)
+        }
+    }
+
+    /**
+     * 取得 ExoPlayer，池中没有空闲播放器时在后台创建，完成后由 [onBuilt] 继续
+     *
+     * @return 是否已取得
+     */
+    private fun wake(): Boolean {
+        buildStartNanos = clock.elapsedRealtimeNanos()
+        val pooled = ExoPlayerPool.acquireIdle()
+        if (pooled != null) {
+            pendingBuild?.let { ExoPlayerFactory.discard(it) }
+            pendingBuild = null
+            usePooled(pooled)
+            return true
+        }
+        val pending = pendingBuild ?: ExoPlayerFactory.buildAsync(context).also { pendingBuild = it }
+        buildAwaited = true
+        if (pending.isDone) {
+            return takeBuilt()
+        }
+        ExoPlayerFactory.whenBuilt(pending, buildCallback)
+        return false
+    }
+
+    /**
+     * 后台创建结束，继续 prepare
+     */
+    private fun onBuilt() {
+        if (takeBuilt()) {
+            startMedia()
+        }
+    }
+
+    /**
+     * 取得后台创建的 ExoPlayer，prepare 已被 release 或休眠取消时忽略，创建失败时进入错误状态
+     */
+    private fun takeBuilt(): Boolean {
+        val pending = pendingBuild
+        if (!buildAwaited || pending == null || !pending.isDone) {
+            return false
+        }
+        buildAwaited = false
+        pendingBuild = null
+        val pooled = try {
+            ExoPlayerPool.acquireBuilt(pending)
+        } catch (e: Exception) {
+            Log.e("[$name] exoPlayer build failed", e)
+            handleInternalEvent(INTERNAL_ERROR, e)
+            return false
+        }
+        usePooled(pooled)
+        return true
+    }
+
+    private fun usePooled(pooled: PooledExoPlayer) {
+        pooledPlayer = pooled
+        pooledPlayer.attach(loadControl, trackSelector.parameters)
+        trackSelector = pooledPlayer.trackSelector
+        exoPlayer = pooledPlayer.player
+        hasExoPlayer = true
+        playerBuildTime = (clock.elapsedRealtimeNanos() - buildStartNanos) / 1_000_000
+        Log.d("[$name] exoPlayer ready in $playerBuildTime ms")
+
         exoPlayer.addListener(interPlayerListener)
         // disable handleAudioFocus to support multiple players
         exoPlayer.setAudioAttributes(AudioAttributes.DEFAULT, false)
         exoPlayer.playWhenReady = false
+        exoPlayer.playbackParameters = PlaybackParameters(playbackSpeed)
+        onScrubbingChanged(scrubbing)
+        bindView()
+    }
+
+    private fun bindView() {
+        val container = container ?: return
+        val view = playerView
+        if (view == null) {
+            playerView = bindPlayer(exoPlayer).also {
+                container.addView(it)
+            }
+        } else {
+            rebindPlayer(view, exoPlayer)
+        }
+    }
+
+    private fun unbindView() {
+        playerView?.let { unbindPlayer(it, exoPlayer) }
     }
 
     /**
@@ -100,16 +269,59 @@ open class VideoPlayer constructor(
         if (container !is FrameLayout) {
             throw IllegalArgumentException("videoPlayer container must be type of FrameLayout!")
         }
-        container.addView(bindPlayer(exoPlayer))
+        this.container?.removeOnLayoutChangeListener(layoutListener)
+        this.container = container
+        container.addOnLayoutChangeListener(layoutListener)
+        if (hasExoPlayer) {
+            bindView()
+        } else {
+            buildAsync()
+        }
     }
 
+    /**
+     * 首次取得 ExoPlayer 且已设置容器时创建播放视图
+     *
+     * ExoPlayer 来自 [ExoPlayerPool]，休眠或释放后归还，唤醒时可能换成另一个实例。
+     * 自定义视图默认在换用新的播放器时重新创建，需复用视图或解除视图上的监听时覆盖 [rebindPlayer] 与 [unbindPlayer]。
+     */
     open fun bindPlayer(player: Player): View {
         val playerView = VideoPlayerView(context).apply {
-            setPlayer(exoPlayer)
+            setPlayer(player)
         }
         return playerView
     }
 
+    /**
+     * 唤醒后将已有的播放视图绑定到新取得的 ExoPlayer
+     *
+     * 默认处理 [VideoPlayerView]，其他视图从容器中移除并由 [bindPlayer] 重新创建。
+     */
+    open fun rebindPlayer(view: View, player: Player) {
+        if (view is VideoPlayerView) {
+            view.setPlayer(player)
+            return
+        }
+        val container = container ?: return
+        container.removeView(view)
+        playerView = bindPlayer(player).also {
+            container.addView(it)
+        }
+    }
+
+    /**
+     * ExoPlayer 归还 [ExoPlayerPool] 前解除播放视图的绑定，之后该播放器会被其他播放器使用
+     *
+     * 默认处理 [VideoPlayerView]，其他视图只清除视频输出；在 [player] 上注册了监听的自定义视图需覆盖此方法并移除。
+     */
+    open fun unbindPlayer(view: View, player: Player) {
+        if (view is VideoPlayerView) {
+            view.setPlayer(null)
+        } else {
+            player.clearVideoSurface()
+        }
+    }
+
     private fun createMediaSource(uri: Uri): MediaSource {
         return when (val type = Util.inferContentType(uri)) {
             C.TYPE_HLS -> HlsMediaSource
@@ -122,46 +334,186 @@ open class VideoPlayer constructor(
         }
     }
 
+    /**
+     * 按分段裁剪媒体源，需在 prepare 前调用
+     *
+     * @return 是否设置成功
+     */
+    internal fun clipTo(segments: SegmentIndex): Boolean {
+        if (isInPlaybackState() || targetPhase != AtomPlayerPhase.Idle) {
+            return false
+        }
+        clips = segments
+        return true
+    }
+
+    private fun createClippedMediaSource(uri: Uri, segments: SegmentIndex): MediaSource {
+        return createClippedPlaylist(segments) { createMediaSource(uri) }
+    }
+
+    override fun onScrubbingChanged(scrubbing: Boolean) {
+        if (!hasExoPlayer) {
+            return
+        }
+        exoPlayer.setSeekParameters(if (scrubbing) SeekParameters.CLOSEST_SYNC else SeekParameters.EXACT)
+    }
+
     override fun seekToInternal(timeMs: Long) {
-        exoPlayer.seekTo(timeMs)
+        if (!hasExoPlayer) {
+            return
+        }
+        scrubSeeking = scrubbing
+        val segments = clips
+        if (segments == null) {
+            exoPlayer.seekTo(timeMs)
+            return
+        }
+        val index = segments.indexOfOuter(timeMs)
+        if (index != -1) {
+            exoPlayer.seekTo(index, timeMs - segments.outerStart(index))
+        } else {
+            val last = segments.size - 1
+            exoPlayer.seekTo(last, segments.end(last) - segments.start(last))
+        }
     }
 
     override var playbackSpeed = 1.0f
         set(value) {
             field = value
-            exoPlayer.playbackParameters = PlaybackParameters(value)
+            if (hasExoPlayer) {
+                exoPlayer.playbackParameters = PlaybackParameters(value)
+            }
         }
 
+    override fun canHibernate(): Boolean = true
+
+    /**
+     * 将 ExoPlayer 归还 [ExoPlayerPool]，释放解码器与缓冲
+     */
+    override fun hibernate() {
+        releaseExoPlayer()
+        super.hibernate()
+    }
+
+    private fun releaseExoPlayer() {
+        buildAwaited = false
+        pendingBuild?.let { ExoPlayerFactory.discard(it) }
+        pendingBuild = null
+        if (hasExoPlayer) {
+            hasExoPlayer = false
+            exoPlayer.removeListener(interPlayerListener)
+            unbindView()
+            // 选轨参数留在本播放器，池中的 TrackSelector 将由其他播放器使用
+            val parameters = trackSelector.parameters
+            trackSelector = DefaultTrackSelector(context.applicationContext).apply {
+                setParameters(parameters)
+            }
+            ExoPlayerPool.recycle(pooledPlayer)
+        }
+    }
+
     override fun prepareInternal() {
-        val mediaSource = createMediaSource(Uri.parse(videoUrl))
+        if (hasExoPlayer || wake()) {
+            startMedia()
+        }
+    }
+
+    private fun startMedia() {
+        val uri = Uri.parse(videoUrl)
+        val mediaSource = clips?.let { createClippedMediaSource(uri, it) } ?: createMediaSource(uri)
         exoPlayer.setMediaSource(mediaSource)
         exoPlayer.prepare()
     }
 
     override fun playInternal() {
-        exoPlayer.playWhenReady = true
+        if (hasExoPlayer) {
+            exoPlayer.playWhenReady = true
+        }
     }
 
     override fun pauseInternal() {
-        exoPlayer.playWhenReady = false
+        if (hasExoPlayer) {
+            exoPlayer.playWhenReady = false
+        }
     }
 
     override fun release() {
-        exoPlayer.release()
-        positionNotifier.stop()
+        releaseExoPlayer()
+        stopPositionTicks()
+    }
+
+    override fun visibleArea(): Long {
+        val view = container ?: return 0
+        return if (view.isShown) view.width.toLong() * view.height else 0
+    }
+
+    override fun setVideoEnabled(enabled: Boolean) {
+        if (!hasExoPlayer) {
+            return
+        }
+        if (trackSelector.setVideoEnabled(exoPlayer, enabled) && enabled && isInPlaybackState()) {
+            // 在当前位置重新定位，视频从最近的关键帧开始解码
+            internalSeeking = true
+            exoPlayer.seekTo(exoPlayer.currentWindowIndex, exoPlayer.currentPosition)
+            internalSeeking = false
+        }
+    }
+
+    override fun setMaxVideoBitrate(bitrate: Int) {
+        trackSelector.setParameters(trackSelector.buildUponParameters().setMaxVideoBitrate(bitrate))
+    }
+
+    override fun bufferedAheadMs(): Long {
+        if (!isInPlaybackState() || currentPhase == AtomPlayerPhase.End) {
+            return -1
+        }
+        return exoPlayer.totalBufferedDuration
+    }
+
+    override val reportsFirstFrame: Boolean
+        get() = true
+
+    override fun isBufferReady(): Boolean {
+        if (!hasExoPlayer) {
+            return false
+        }
+        val state = exoPlayer.playbackState
+        return state == Player.STATE_READY || state == Player.STATE_ENDED
     }
 
     override fun currentPosition(): Long {
         if (isInPlaybackState()) {
-            return exoPlayer.currentPosition
+            val segments = clips ?: return exoPlayer.currentPosition
+            return segments.outerStart(exoPlayer.currentWindowIndex) + exoPlayer.currentPosition
         }
         return 0
     }
 
     override fun duration(): Long {
-        if (isInPlaybackState()) {
+        clips?.let { return it.duration }
+        if (isInPlaybackState() && exoPlayer.duration != C.TIME_UNSET) {
             return exoPlayer.duration
         }
-        return -1
+        return durationHint
+    }
+}
+
+/**
+ * 按分段裁剪的播放列表，每段一个 ClippingMediaSource
+ *
+ * 分段可能有成百上千个，与 [MultiVideoPlayer] 的播放列表一样延迟准备，只有当前与下一段会加载清单或索引，
+ * 其余分段在播放到达前不发起请求。
+ */
+internal fun createClippedPlaylist(segments: SegmentIndex, createSource: () -> MediaSource): ConcatenatingMediaSource {
+    val sources = ArrayList<MediaSource>(segments.size)
+    for (i in 0 until segments.size) {
+        sources += ClippingMediaSource(createSource(), segments.start(i) * 1000, segments.end(i) * 1000)
     }
-}
\ No newline at end of file
+    val playlist = ConcatenatingMediaSource(
+        /* isAtomic= */ false,
+        /* useLazyPreparation= */ true,
+        ShuffleOrder.DefaultShuffleOrder(0),
+    )
+    playlist.addMediaSources(sources)
+    return playlist
+}
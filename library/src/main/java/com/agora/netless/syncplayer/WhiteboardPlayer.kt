@@ -15,6 +15,25 @@ class WhiteboardPlayer(
 
     private var position: Long = 0
 
+    // 白板回放时长，首次读取后缓存，避免每次经由 JS bridge
+    private var timeDuration = -1L
+
+    // seek 后白板尚未回调新的进度
+    private var landing = false
+
+    // 白板在 SDK 线程回调的最新进度，由主线程取用
+    @Volatile
+    private var scheduleTime: Long = 0
+
+    private val positionUpdate = Runnable {
+        position = scheduleTime
+        dispatchPositionChanged(position)
+        if (landing) {
+            landing = false
+            notifySeekProgress()
+        }
+    }
+
     init {
         val interPlayerListener = object : WhitePlayerListenerAdapter() {
             override fun onPhaseChanged(phase: PlayerPhase) {
@@ -48,10 +67,10 @@ class WhiteboardPlayer(
 
             override fun onScheduleTimeChanged(time: Long) {
                 // Log.d("[$name] interPlayer onScheduleTimeChanged $time")
-                position = time;
-                notifyChanged {
-                    it.onPositionChanged(this@WhiteboardPlayer, time)
-                }
+                scheduleTime = time
+                // 与状态回调一样切换至主线程，未处理的进度只保留最新一次
+                eventHandler.removeCallbacks(positionUpdate)
+                eventHandler.post(positionUpdate)
             }
         }
         player.addPlayerListener(interPlayerListener)
@@ -72,15 +91,22 @@ class WhiteboardPlayer(
     }
 
     override fun seekToInternal(timeMs: Long) {
+        // 丢弃 seek 前尚未处理的进度
+        eventHandler.removeCallbacks(positionUpdate)
         position = timeMs
+        landing = true
         player.seekToScheduleTime(timeMs)
-        notifyChanged {
-            it.onSeekTo(this, timeMs = timeMs)
-            it.onPositionChanged(this, position = timeMs)
-        }
+        dispatchSeekTo(timeMs)
+        dispatchPositionChanged(timeMs)
     }
 
+    /**
+     * onSeekTo 在调用 seekToScheduleTime 后立即回调，白板回调新的进度后才视为落定
+     */
+    override fun isBufferReady(): Boolean = !landing
+
     override fun release() {
+        eventHandler.removeCallbacks(positionUpdate)
         player.stop()
     }
 
@@ -92,9 +118,9 @@ class WhiteboardPlayer(
     }
 
     override fun duration(): Long {
-        if (isInPlaybackState()) {
-            return player.playerTimeInfo.timeDuration
+        if (timeDuration <= 0 && isInPlaybackState()) {
+            timeDuration = player.playerTimeInfo.timeDuration
         }
-        return -1
+        return if (timeDuration > 0) timeDuration else durationHint
     }
 }
\ No newline at end of file
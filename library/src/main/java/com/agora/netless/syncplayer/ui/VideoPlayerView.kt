@@ -20,7 +20,7 @@ class VideoPlayerView @JvmOverloads constructor(
         playerView = findViewById(R.id.player_view)
     }
 
-    fun setPlayer(player: Player) {
+    fun setPlayer(player: Player?) {
         playerView.requestFocus()
         playerView.player = player
     }
@@ -0,0 +1,46 @@
+package com.agora.netless.syncplayer
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class BandwidthSchedulerTest {
+    private val critical = BooleanArray(3)
+
+    private fun decide(vararg buffered: Long, primary: Int = -1): Int {
+        return BandwidthScheduler.decide(buffered, primary, 2_000, 5_000, critical)
+    }
+
+    @Test
+    fun no_throttle_when_all_buffered() {
+        assertEquals(-1, decide(10_000, 8_000, 6_000))
+    }
+
+    @Test
+    fun favor_leaf_closest_to_stalling() {
+        assertEquals(2, decide(10_000, 1_500, 500))
+        assertTrue(critical[1])
+        assertTrue(critical[2])
+    }
+
+    @Test
+    fun favor_primary_when_critical() {
+        assertEquals(1, decide(10_000, 1_500, 500, primary = 1))
+        assertEquals(2, decide(10_000, 8_000, 500, primary = 1))
+    }
+
+    @Test
+    fun stay_critical_until_recovered() {
+        assertEquals(1, decide(10_000, 1_000, 8_000))
+        assertEquals(1, decide(10_000, 4_000, 8_000))
+        assertEquals(-1, decide(10_000, 5_000, 8_000))
+        assertFalse(critical[1])
+    }
+
+    @Test
+    fun ignore_inactive_leaves() {
+        assertEquals(-1, decide(-1, 8_000, 6_000))
+        assertFalse(critical[0])
+    }
+}
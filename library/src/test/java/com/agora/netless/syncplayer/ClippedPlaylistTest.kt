@@ -0,0 +1,52 @@
+package com.agora.netless.syncplayer
+
+import com.google.android.exoplayer2.MediaItem
+import com.google.android.exoplayer2.source.BaseMediaSource
+import com.google.android.exoplayer2.source.MediaPeriod
+import com.google.android.exoplayer2.source.MediaSource
+import com.google.android.exoplayer2.upstream.Allocator
+import com.google.android.exoplayer2.upstream.TransferListener
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class ClippedPlaylistTest {
+    /**
+     * 记录是否被准备的空媒体源
+     */
+    private class RecordingSource : BaseMediaSource() {
+        var prepared = false
+
+        override fun getMediaItem(): MediaItem = MediaItem.Builder().setMediaId("segment").build()
+
+        override fun prepareSourceInternal(mediaTransferListener: TransferListener?) {
+            prepared = true
+        }
+
+        override fun maybeThrowSourceInfoRefreshError() {}
+
+        override fun createPeriod(id: MediaSource.MediaPeriodId, allocator: Allocator, startPositionUs: Long): MediaPeriod {
+            throw UnsupportedOperationException()
+        }
+
+        override fun releasePeriod(mediaPeriod: MediaPeriod) {}
+
+        override fun releaseSourceInternal() {}
+    }
+
+    @Test
+    fun build_large_segment_list_without_preparing_sources() {
+        val size = 5_000
+        val segments = SegmentIndex(
+            LongArray(size) { it * 1_000L },
+            LongArray(size) { it * 1_000L + 500 },
+        )
+        val sources = ArrayList<RecordingSource>()
+
+        val playlist = createClippedPlaylist(segments) { RecordingSource().also { sources += it } }
+
+        assertEquals(size, playlist.size)
+        assertEquals(size, sources.size)
+        assertTrue(sources.none { it.prepared })
+    }
+}
@@ -0,0 +1,39 @@
+package com.agora.netless.syncplayer
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Test
+
+class DecoderBudgetTest {
+    private fun assign(areas: LongArray, prerolling: BooleanArray, maxDecoders: Int): BooleanArray {
+        val granted = BooleanArray(areas.size)
+        DecoderBudget.assign(areas, prerolling, maxDecoders, granted)
+        return granted
+    }
+
+    @Test
+    fun grant_largest_visible_leaves() {
+        val granted = assign(longArrayOf(100, 400, 200, 300), BooleanArray(4), 2)
+        assertArrayEquals(booleanArrayOf(false, true, false, true), granted)
+    }
+
+    @Test
+    fun skip_hidden_and_inactive_leaves() {
+        val granted = assign(longArrayOf(0, -1, 100), BooleanArray(3), 3)
+        assertArrayEquals(booleanArrayOf(false, false, true), granted)
+    }
+
+    @Test
+    fun rank_prerolling_after_visible() {
+        val areas = longArrayOf(0, 100, 200)
+        val prerolling = booleanArrayOf(true, false, false)
+
+        assertArrayEquals(booleanArrayOf(false, true, true), assign(areas, prerolling, 2))
+        assertArrayEquals(booleanArrayOf(true, true, true), assign(areas, prerolling, 3))
+    }
+
+    @Test
+    fun prerolling_inactive_leaf_is_skipped() {
+        val granted = assign(longArrayOf(-1, 100), booleanArrayOf(true, false), 2)
+        assertArrayEquals(booleanArrayOf(false, true), granted)
+    }
+}
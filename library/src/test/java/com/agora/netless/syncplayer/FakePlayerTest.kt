@@ -0,0 +1,75 @@
+package com.agora.netless.syncplayer
+
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+
+class FakePlayerTest {
+    private val clock = ManualPlayerClock()
+    private val player = FakePlayer(10_000)
+
+    @Before
+    fun setUp() {
+        player.clock = clock
+        player.prepare()
+    }
+
+    @Test
+    fun advance_only_while_playing() {
+        clock.advance(1_000)
+        assertEquals(0, player.currentPosition())
+
+        player.play()
+        clock.advance(1_500)
+        assertEquals(1_500, player.currentPosition())
+
+        player.pause()
+        clock.advance(2_000)
+        assertEquals(1_500, player.currentPosition())
+
+        player.play()
+        clock.advance(500)
+        assertEquals(2_000, player.currentPosition())
+    }
+
+    @Test
+    fun rebase_on_speed_change() {
+        player.play()
+        clock.advance(1_000)
+        player.playbackSpeed = 2.0f
+        clock.advance(1_000)
+        assertEquals(3_000, player.currentPosition())
+
+        player.playbackSpeed = 0.5f
+        clock.advance(1_000)
+        assertEquals(3_500, player.currentPosition())
+    }
+
+    @Test
+    fun continue_from_seek_target() {
+        player.play()
+        clock.advance(1_000)
+        player.seekTo(6_000)
+        assertEquals(6_000, player.currentPosition())
+
+        clock.advance(500)
+        assertEquals(6_500, player.currentPosition())
+    }
+
+    @Test
+    fun end_at_duration() {
+        player.play()
+        player.seekTo(9_000)
+        clock.advance(999)
+        player.onPositionTick()
+        assertEquals(AtomPlayerPhase.Playing, player.currentPhase)
+
+        clock.advance(200)
+        player.onPositionTick()
+        assertEquals(AtomPlayerPhase.End, player.currentPhase)
+        assertEquals(10_000, player.currentPosition())
+
+        clock.advance(1_000)
+        assertEquals(10_000, player.currentPosition())
+    }
+}
@@ -0,0 +1,48 @@
+package com.agora.netless.syncplayer
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class PositionInterpolatorTest {
+    private val clock = ManualPlayerClock()
+    private val interpolator = PositionInterpolator()
+
+    @Test
+    fun hold_position_when_not_playing() {
+        interpolator.update(1_000, clock)
+        clock.advance(500)
+        assertEquals(1_000, interpolator.position(clock, 1.0f))
+    }
+
+    @Test
+    fun advance_with_speed_when_playing() {
+        interpolator.update(1_000, clock)
+        interpolator.setPlaying(true, clock, 2.0f)
+        clock.advance(250)
+        assertEquals(1_500, interpolator.position(clock, 2.0f))
+
+        interpolator.update(1_600, clock)
+        clock.advance(100)
+        assertEquals(1_800, interpolator.position(clock, 2.0f))
+    }
+
+    @Test
+    fun freeze_at_interpolated_position_on_pause() {
+        interpolator.update(1_000, clock)
+        interpolator.setPlaying(true, clock, 1.0f)
+        clock.advance(300)
+        interpolator.setPlaying(false, clock, 1.0f)
+        clock.advance(1_000)
+        assertEquals(1_300, interpolator.position(clock, 1.0f))
+    }
+
+    @Test
+    fun keep_elapsed_time_at_old_speed_on_rebase() {
+        interpolator.update(1_000, clock)
+        interpolator.setPlaying(true, clock, 1.0f)
+        clock.advance(400)
+        interpolator.rebase(clock, 1.0f)
+        clock.advance(100)
+        assertEquals(1_600, interpolator.position(clock, 2.0f))
+    }
+}
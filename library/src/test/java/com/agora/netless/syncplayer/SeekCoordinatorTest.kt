@@ -0,0 +1,146 @@
+package com.agora.netless.syncplayer
+
+import android.view.ViewGroup
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class SeekCoordinatorTest {
+    /**
+     * 记录收到的 seek，由测试决定何时确认
+     */
+    private class DeferredPlayer(var ackImmediately: Boolean = false) : AtomPlayer {
+        lateinit var coordinator: SeekCoordinator
+        val seeks = mutableListOf<Long>()
+
+        override var name = "deferred"
+        override var currentPhase = AtomPlayerPhase.Ready
+        override val isPlaying = false
+        override val isError = false
+        override var playbackSpeed = 1.0f
+
+        override fun seekTo(timeMs: Long) {
+            seeks += timeMs
+            if (ackImmediately) ack()
+        }
+
+        fun ack(landed: Long = seeks.last()) = coordinator.onSeekTo(this, landed)
+
+        override fun prepare() {}
+        override fun play() {}
+        override fun pause() {}
+        override fun stop() {}
+        override fun release() {}
+        override fun currentPosition() = 0L
+        override fun duration() = 0L
+        override fun setPlayerContainer(container: ViewGroup) {}
+        override fun addPlayerListener(listener: AtomPlayerListener) {}
+        override fun removePlayerListener(listener: AtomPlayerListener) {}
+    }
+
+    private val completed = mutableListOf<Long>()
+
+    private fun coordinate(vararg players: DeferredPlayer): SeekCoordinator {
+        val coordinator = SeekCoordinator(arrayOf(*players)) { completed += it }
+        players.forEach { it.coordinator = coordinator }
+        return coordinator
+    }
+
+    @Test
+    fun latest_target_wins() {
+        val a = DeferredPlayer()
+        val b = DeferredPlayer()
+        val coordinator = coordinate(a, b)
+
+        coordinator.seekTo(1_000)
+        coordinator.seekTo(2_000)
+        coordinator.seekTo(3_000)
+        a.ack()
+        b.ack()
+
+        assertEquals(listOf(1_000L, 3_000L), a.seeks)
+        assertTrue(coordinator.isSeeking)
+        assertTrue(completed.isEmpty())
+
+        b.ack()
+        a.ack()
+        assertEquals(listOf(3_000L), completed)
+        assertEquals(2, coordinator.generation)
+        assertFalse(coordinator.isSeeking)
+    }
+
+    @Test
+    fun duplicate_acks_are_ignored() {
+        val a = DeferredPlayer()
+        val b = DeferredPlayer()
+        val coordinator = coordinate(a, b)
+
+        coordinator.seekTo(1_000)
+        a.ack()
+        a.ack()
+        assertTrue(coordinator.isSeeking)
+
+        b.ack()
+        assertEquals(listOf(1_000L), completed)
+    }
+
+    @Test
+    fun synchronous_acks_complete_once() {
+        val a = DeferredPlayer(ackImmediately = true)
+        val b = DeferredPlayer(ackImmediately = true)
+        val coordinator = coordinate(a, b)
+
+        coordinator.seekTo(1_000)
+        coordinator.seekTo(2_000)
+
+        assertEquals(listOf(1_000L, 2_000L), completed)
+        assertFalse(coordinator.isSeeking)
+    }
+
+    @Test
+    fun followers_seek_to_leader_landing() {
+        val leader = DeferredPlayer()
+        val follower = DeferredPlayer()
+        val coordinator = coordinate(follower, leader)
+        coordinator.leader = leader
+
+        coordinator.seekTo(10_500)
+        assertEquals(listOf(10_500L), leader.seeks)
+        assertTrue(follower.seeks.isEmpty())
+
+        leader.ack(landed = 10_000)
+        assertEquals(listOf(10_000L), follower.seeks)
+
+        follower.ack()
+        assertEquals(listOf(10_000L), completed)
+    }
+
+    @Test
+    fun idle_players_are_skipped() {
+        val ready = DeferredPlayer()
+        val idle = DeferredPlayer().apply { currentPhase = AtomPlayerPhase.Idle }
+        val coordinator = coordinate(ready, idle)
+
+        coordinator.seekTo(1_000)
+        assertEquals(listOf(1_000L), ready.seeks)
+        assertTrue(idle.seeks.isEmpty())
+
+        ready.ack()
+        assertEquals(listOf(1_000L), completed)
+        assertFalse(coordinator.isSeeking)
+    }
+
+    @Test
+    fun all_idle_completes_immediately() {
+        val a = DeferredPlayer().apply { currentPhase = AtomPlayerPhase.Idle }
+        val b = DeferredPlayer().apply { currentPhase = AtomPlayerPhase.Idle }
+        val coordinator = coordinate(a, b)
+
+        coordinator.seekTo(2_000)
+        assertTrue(a.seeks.isEmpty())
+        assertTrue(b.seeks.isEmpty())
+        assertEquals(listOf(2_000L), completed)
+        assertFalse(coordinator.isSeeking)
+    }
+}
@@ -0,0 +1,70 @@
+package com.agora.netless.syncplayer
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class SegmentIndexTest {
+    private val segments = SegmentIndex.of(
+        listOf(
+            Selection(5_000, 10_000),
+            Selection(15_000, 20_000),
+            Selection(30_000, 40_000),
+        )
+    )
+
+    @Test
+    fun index_of_inner_position() {
+        assertEquals(0, segments.indexOf(0))
+        assertEquals(0, segments.indexOf(9_999))
+        assertEquals(1, segments.indexOf(10_000))
+        assertEquals(2, segments.indexOf(39_999))
+        assertEquals(-1, segments.indexOf(40_000))
+    }
+
+    @Test
+    fun map_between_inner_and_outer() {
+        assertEquals(20_000, segments.duration)
+
+        assertEquals(0, segments.innerToOuter(0))
+        assertEquals(0, segments.innerToOuter(5_000))
+        assertEquals(5_000, segments.innerToOuter(15_000))
+        assertEquals(12_000, segments.innerToOuter(32_000))
+
+        assertEquals(5_000, segments.outerToInner(0))
+        assertEquals(15_000, segments.outerToInner(5_000))
+        assertEquals(32_000, segments.outerToInner(12_000))
+    }
+
+    @Test
+    fun random_access_after_sequential_access() {
+        var hint = -1
+        for (position in 5_000L until 40_000L step 100) {
+            hint = segments.indexOf(position, hint)
+        }
+        assertEquals(2, hint)
+        assertEquals(0, segments.indexOf(6_000))
+        assertEquals(2, segments.indexOfOuter(19_999))
+        assertEquals(1, segments.indexOfOuter(5_000))
+    }
+
+    @Test
+    fun stale_hint_falls_back_to_search() {
+        assertEquals(0, segments.indexOf(6_000, hint = 2))
+        assertEquals(2, segments.indexOf(35_000, hint = 0))
+        assertEquals(-1, segments.indexOf(40_000, hint = 2))
+        assertEquals(1, segments.indexOfOuter(5_000, hint = 7))
+    }
+
+    @Test
+    fun lookup_in_large_index() {
+        val size = 10_000
+        val large = SegmentIndex(
+            LongArray(size) { it * 1_000L },
+            LongArray(size) { it * 1_000L + 500 },
+        )
+        assertEquals(size * 500L, large.duration)
+        assertEquals(7_777, large.indexOf(7_777_100))
+        assertEquals(7_778, large.indexOf(7_777_600))
+        assertEquals(7_777_100, large.outerToInner(7_777 * 500L + 100))
+    }
+}